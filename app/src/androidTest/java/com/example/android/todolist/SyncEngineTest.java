@@ -0,0 +1,379 @@
+package com.example.android.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.TaskEntry;
+import com.example.android.todolist.database.TaskRepository;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * SyncEngine against an in-process stub server, a ServerSocket speaking just enough HTTP :
+ * SYNC_TASKS changed tasks are pushed and SERVER_CHANGES pulled.
+ * The local side is the app one, SyncEngine.RepositoryStore over TaskRepository, in an in-memory
+ * db (see AppDatabase.setTestInstance()) with its cursor in its own preferences.
+ * Sync time and bytes are logged
+ * -------------------------------------------------------------------------------------------------
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncEngineTest {
+
+    private static final String TAG = SyncEngineTest.class.getSimpleName();
+
+    private static final String PREFS_NAME = "sync_test";
+
+    private static final int SYNC_TASKS     = 10000;
+    private static final int SERVER_CHANGES = 2000;
+
+    private static final long NOW = 1500000000000L;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private AppDatabase mDb;
+    private TaskRepository mRepository;
+    private SyncEngine.RepositoryStore mStore;
+    private StubServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mDb = AppDatabase.buildInMemory(context);
+        AppDatabase.setTestInstance(mDb);
+        mRepository = TaskRepository.getInstance(context);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+        mStore = new SyncEngine.RepositoryStore(mRepository, prefs);
+        mServer = new StubServer();
+
+        // created a millisecond apart, oldest last : all in the outbox
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= SYNC_TASKS; i++) {
+                    mRepository.insertTask(task("local-" + i, "local task " + i, NOW - i));
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+        AppDatabase.setTestInstance(null);
+        mDb.close();
+    }
+
+    @Test
+    public void syncPushesAndPullsEveryChange() throws Exception {
+        for (int i = 1; i <= SERVER_CHANGES; i++) {
+            mServer.addChange(task("remote-" + i, "remote task " + i, NOW));
+        }
+
+        SyncEngine.SyncResult result = SyncEngine.sync(mServer.getUrl(), mStore);
+        Log.i(TAG, "Sync of " + SYNC_TASKS + " changed tasks : " + result);
+
+        assertEquals(SYNC_TASKS, result.pushed);
+        assertEquals(SERVER_CHANGES, result.pulled);
+        assertTrue(mRepository.loadOutboxBatch(0, 1).isEmpty());
+        assertEquals(SERVER_CHANGES, mStore.getCursor());
+
+        // every field made the round trip through the gzip json
+        assertEquals(SYNC_TASKS, mServer.received.size());
+        for (int i = 1; i <= SYNC_TASKS; i++) {
+            TaskEntry sent = loadTask("local-" + i);
+            assertSameTask(sent, mServer.received.get(sent.getUid()));
+        }
+        // every pulled task is in the tree, whatever rank it collides with
+        for (int i = 1; i <= SERVER_CHANGES; i++) {
+            TaskEntry pulled = loadTask("remote-" + i);
+            assertSameTask(mServer.changes.get(i - 1), pulled);
+            assertTrue(isInTree(pulled));
+        }
+        assertEquals(0, mServer.uncompressedRequests);
+
+        // bytes counted by the engine are the ones on the wire
+        assertEquals(mServer.bodyBytesReceived, result.bytesSent);
+        assertEquals(mServer.bodyBytesSent, result.bytesReceived);
+        // json of 10k tasks compresses well
+        assertTrue(result.bytesSent < mServer.jsonBytesReceived / 4);
+    }
+
+    @Test
+    public void plainResponsesAreRead() throws Exception {
+        mServer.gzipResponses = false;
+        for (int i = 1; i <= SERVER_CHANGES; i++) {
+            mServer.addChange(task("remote-" + i, "remote task " + i, NOW));
+        }
+
+        SyncEngine.SyncResult result = SyncEngine.sync(mServer.getUrl(), mStore);
+
+        assertEquals(SERVER_CHANGES, result.pulled);
+        assertSameTask(mServer.changes.get(0), loadTask("remote-1"));
+        assertEquals(mServer.bodyBytesSent, result.bytesReceived);
+    }
+
+    @Test
+    public void conflictsAreLastWriterWins() throws Exception {
+        // local-n has been changed at NOW - n
+        mServer.addChange(task("local-1", "remote newer", NOW));
+        mServer.addChange(task("local-2", "remote older", NOW - 1000));
+        mServer.addChange(task("local-3", "remote same time", NOW - 3));
+        mServer.addChange(deleted(task("local-4", "", NOW)));
+        // deleted here after the remote edit : the deletion time is the change time
+        mRepository.deleteTask(loadTask("local-5").getId());
+        mServer.addChange(task("local-5", "remote edit", NOW));
+        // deleted on the server before this device ever saw it
+        mServer.addChange(deleted(task("remote-gone", "", NOW)));
+        // new on the server, ranked like a local task of the same priority
+        TaskEntry local6 = loadTask("local-6");
+        TaskEntry ranked = task("remote-ranked", "remote ranked", NOW);
+        ranked.setPriority(local6.getPriority());
+        ranked.setRank(local6.getRank());
+        mServer.addChange(ranked);
+
+        SyncEngine.SyncResult result = SyncEngine.sync(mServer.getUrl(), mStore);
+
+        assertEquals(3, result.pulled);
+        assertEquals("remote newer", loadTask("local-1").getDescription());
+        assertEquals("local task 2", loadTask("local-2").getDescription());
+        assertEquals("local task 3", loadTask("local-3").getDescription());
+        assertNotNull(loadTask("local-4").getDeletedAt());
+        assertEquals("local task 5", loadTask("local-5").getDescription());
+        assertNotNull(loadTask("local-5").getDeletedAt());
+        assertNull(mDb.taskDao().getTaskByUid("remote-gone"));
+        TaskEntry inserted = loadTask("remote-ranked");
+        assertEquals(local6.getRank(), inserted.getRank(), 0);
+        assertTrue(isInTree(inserted));
+        assertEquals(local6.getRank(), loadTask("local-6").getRank(), 0);
+    }
+
+    @Test
+    public void remoteDeleteCoversTheSubtasks() throws Exception {
+        TaskEntry parent = task("local-parent", "local parent", NOW - 1000);
+        int parentId = mRepository.insertTask(parent);
+        TaskEntry child = task("local-child", "local child", NOW - 1000);
+        child.setParentId(parentId);
+        mRepository.insertTask(child);
+        mServer.addChange(deleted(task("local-parent", "", NOW)));
+
+        SyncEngine.SyncResult result = SyncEngine.sync(mServer.getUrl(), mStore);
+
+        assertEquals(1, result.pulled);
+        assertEquals(new Date(NOW), loadTask("local-parent").getDeletedAt());
+        assertEquals(new Date(NOW), loadTask("local-child").getDeletedAt());
+        // same tombstone : a restore of the parent brings the child back
+        mRepository.restoreTask(parentId);
+        assertNull(loadTask("local-child").getDeletedAt());
+    }
+
+
+    private TaskEntry loadTask(String uid) {
+        TaskEntry task = mDb.taskDao().getTaskByUid(uid);
+        assertNotNull(uid, task);
+        mRepository.loadFullDescription(task);
+        return task;
+    }
+
+    private boolean isInTree(TaskEntry task) {
+        return mDb.closureDao().loadSubtreeIds(new int[]{task.getId()}).contains(task.getId());
+    }
+
+    private static TaskEntry task(String uid, String description, long updatedAt) {
+        return new TaskEntry(0, description, (int) (updatedAt % 3) + 1, new Date(updatedAt),
+                null, updatedAt % 10000, null, null, uid, null);
+    }
+
+    private static TaskEntry deleted(TaskEntry task) {
+        task.setDeletedAt(task.getUpdatedAt());
+        return task;
+    }
+
+    private static void assertSameTask(TaskEntry expected, TaskEntry actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getUid(), actual.getUid());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getRank(), actual.getRank(), 0);
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+        assertEquals(expected.getDueAt(), actual.getDueAt());
+        assertEquals(expected.getCompletedAt(), actual.getCompletedAt());
+        assertEquals(expected.getDeletedAt(), actual.getDeletedAt());
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Sync endpoint on a local port : records the pushed tasks and serves its changes
+     * after the request cursor, SyncEngine.BATCH_SIZE per response. One request per connection
+     * ---------------------------------------------------------------------------------------------
+     */
+    private static class StubServer implements Runnable {
+        final List<TaskEntry> changes = Collections.synchronizedList(new ArrayList<TaskEntry>());
+        final Map<String, TaskEntry> received = Collections.synchronizedMap(new HashMap<String, TaskEntry>());
+        volatile long bodyBytesReceived;
+        volatile long bodyBytesSent;
+        volatile long jsonBytesReceived;
+        volatile int uncompressedRequests;
+        // false : plain json responses, without Content-Encoding
+        volatile boolean gzipResponses = true;
+
+        private final ServerSocket mSocket;
+        private final Thread mThread;
+
+        StubServer() throws IOException {
+            mSocket = new ServerSocket(0);
+            mThread = new Thread(this, "stub sync server");
+            mThread.start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + mSocket.getLocalPort() + "/sync";
+        }
+
+        void addChange(TaskEntry task) {
+            changes.add(task);
+        }
+
+        void close() throws IOException {
+            mSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!mSocket.isClosed()) {
+                try {
+                    Socket connection = mSocket.accept();
+                    try {
+                        serve(connection);
+                    } finally {
+                        connection.close();
+                    }
+                } catch (SocketException e) {
+                    // closed by close()
+                    return;
+                } catch (IOException | JSONException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+
+        private void serve(Socket connection) throws IOException, JSONException {
+            InputStream in = connection.getInputStream();
+            Map<String, String> headers = readHeaders(in);
+            byte[] body = readFully(in, Integer.parseInt(headers.get("content-length")));
+            bodyBytesReceived += body.length;
+            if (!"gzip".equals(headers.get("content-encoding")) || body[0] != (byte) 0x1f || body[1] != (byte) 0x8b) {
+                uncompressedRequests++;
+            }
+            jsonBytesReceived += gunzip(body).length;
+
+            long[] cursor = new long[1];
+            for (TaskEntry task : TaskDeltaCodec.decodeRequest(new ByteArrayInputStream(body), cursor)) {
+                received.put(task.getUid(), task);
+            }
+
+            int from = (int) cursor[0];
+            int to = Math.min(changes.size(), from + SyncEngine.BATCH_SIZE);
+            byte[] response = TaskDeltaCodec.encodeResponse(to, to < changes.size(),
+                    new ArrayList<>(changes.subList(from, to)));
+            if (!gzipResponses) {
+                response = gunzip(response);
+            }
+            bodyBytesSent += response.length;
+
+            OutputStream out = connection.getOutputStream();
+            out.write(("HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + (gzipResponses ? "Content-Encoding: gzip\r\n" : "")
+                    + "Content-Length: " + response.length + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(ASCII));
+            out.write(response);
+            out.flush();
+        }
+
+        // request line and headers, names lower cased
+        private static Map<String, String> readHeaders(InputStream in) throws IOException {
+            Map<String, String> headers = new HashMap<>();
+            readLine(in);
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+            return headers;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    throw new IOException("Connection closed in the headers");
+                }
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return new String(line.toByteArray(), ASCII);
+        }
+
+        private static byte[] readFully(InputStream in, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read == -1) {
+                    throw new IOException("Connection closed in the body");
+                }
+                offset += read;
+            }
+            return bytes;
+        }
+
+        private static byte[] gunzip(byte[] gzipped) throws IOException {
+            InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                return bytes.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.android.todolist;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SdkSuppress;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.ViewConfiguration;
+
+import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.TaskEntry;
+import com.example.android.todolist.database.TaskRepository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Flings the task list over SEED_TASKS seeded tasks once the rows are prewarmed, and fails on
+ * a row inflated on the main thread during the scroll.
+ * The frames over 1.5 vsync (see FrameTimeMonitor) depend on the device and its load : they are
+ * logged, and only fail the test over MAX_JANKY_PERCENT on a benchmark run (-e benchmark true)
+ * The tasks are seeded through TaskRepository in an in-memory db, see AppDatabase.setTestInstance() :
+ * the app data is left untouched
+ * -------------------------------------------------------------------------------------------------
+ */
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = 16)
+public class TaskListScrollTest {
+
+    private static final String TAG = TaskListScrollTest.class.getSimpleName();
+
+    // instrumentation argument turning the jank figure into a gate
+    private static final String ARG_BENCHMARK = "benchmark";
+
+    private static final int SEED_TASKS = 2000;
+    private static final int FLINGS = 6;
+    private static final int MAX_JANKY_PERCENT = 1;
+
+    private static final long LOAD_TIMEOUT_MS = 10000;
+    private static final long SCROLL_TIMEOUT_S = 10;
+    private static final long PREWARM_PASS_MS = 50;
+
+    @Rule
+    public final ActivityTestRule<MainActivity> mActivityRule =
+            new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private final int[] mSeededIds = new int[SEED_TASKS];
+    private AppDatabase mDb;
+    private RecyclerView mRecyclerView;
+    private TaskAdapter mAdapter;
+
+    @Before
+    public void seedAndLaunch() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mDb = AppDatabase.buildInMemory(context);
+        AppDatabase.setTestInstance(mDb);
+        final TaskRepository repository = TaskRepository.getInstance(context);
+        final Date now = new Date();
+        // a single commit : a single list refresh
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SEED_TASKS; i++) {
+                    mSeededIds[i] = repository.insertTask(
+                            new TaskEntry("scroll test task " + i, i % 3 + 1, now, null));
+                }
+            }
+        });
+
+        mActivityRule.launchActivity(null);
+        mRecyclerView = mActivityRule.getActivity().findViewById(R.id.recyclerViewTasks);
+        mAdapter = (TaskAdapter) mRecyclerView.getAdapter();
+    }
+
+    @After
+    public void removeSeed() throws InterruptedException {
+        mActivityRule.finishActivity();
+        // behind the disk work the activity queued, then back to the app file
+        final CountDownLatch removed = new CountDownLatch(1);
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                TaskRepository.getInstance(InstrumentationRegistry.getTargetContext()).deleteTasks(mSeededIds);
+                AppDatabase.setTestInstance(null);
+                mDb.close();
+                removed.countDown();
+            }
+        });
+        assertTrue("Seed not removed", removed.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void flingsWithoutJankOrInflation() throws InterruptedException {
+        awaitSeededList();
+        awaitPrewarm();
+
+        final FrameTimeMonitor monitor = new FrameTimeMonitor("scroll test");
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView.addOnScrollListener(monitor);
+            }
+        });
+        int inflatedBefore = inflatedRows();
+        int frames = 0;
+        int jankyFrames = 0;
+        for (int i = 0; i < FLINGS; i++) {
+            fling();
+            frames += monitor.getLastFrames();
+            jankyFrames += monitor.getLastJankyFrames();
+        }
+
+        assertEquals("Rows inflated on the main thread during the scroll",
+                inflatedBefore, inflatedRows());
+
+        assertTrue("No frame measured", frames > 0);
+        String jank = jankyFrames + " janky frames out of " + frames
+                + " (" + jankyFrames * 100f / frames + " %)";
+        Log.i(TAG, jank);
+        if (Boolean.parseBoolean(InstrumentationRegistry.getArguments().getString(ARG_BENCHMARK))) {
+            assertTrue(jank, jankyFrames * 100 <= frames * MAX_JANKY_PERCENT);
+        }
+    }
+
+    // fling down at full speed and wait for the list to stop
+    private void fling() throws InterruptedException {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final RecyclerView.OnScrollListener listener = new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    stopped.countDown();
+                }
+            }
+        };
+        final boolean[] flung = new boolean[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView.addOnScrollListener(listener);
+                int velocity = ViewConfiguration.get(mRecyclerView.getContext()).getScaledMaximumFlingVelocity();
+                flung[0] = mRecyclerView.fling(0, velocity);
+            }
+        });
+        try {
+            assertTrue("Nothing to scroll", flung[0]);
+            assertTrue("Scroll didn't stop", stopped.await(SCROLL_TIMEOUT_S, TimeUnit.SECONDS));
+        } finally {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mRecyclerView.removeOnScrollListener(listener);
+                }
+            });
+        }
+    }
+
+    private void awaitSeededList() {
+        long deadline = SystemClock.elapsedRealtime() + LOAD_TIMEOUT_MS;
+        while (itemCount() < SEED_TASKS) {
+            assertTrue("Seeded tasks not shown", SystemClock.elapsedRealtime() < deadline);
+            SystemClock.sleep(PREWARM_PASS_MS);
+        }
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    // the prewarmer builds a holder per idle pass of the main thread
+    private void awaitPrewarm() {
+        for (int i = 0; i < 2 * RowPrewarmer.WARM_ROWS; i++) {
+            SystemClock.sleep(PREWARM_PASS_MS);
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        }
+    }
+
+    private int itemCount() {
+        final int[] count = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                count[0] = mAdapter.getItemCount();
+            }
+        });
+        return count[0];
+    }
+
+    private int inflatedRows() {
+        final int[] count = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                count[0] = mAdapter.getInflatedRows();
+            }
+        });
+        return count[0];
+    }
+}
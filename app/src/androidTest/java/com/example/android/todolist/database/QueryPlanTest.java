@@ -0,0 +1,544 @@
+package com.example.android.todolist.database;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Observer;
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteOpenHelper;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteStatement;
+import android.arch.persistence.db.framework.FrameworkSQLiteOpenHelperFactory;
+import android.arch.persistence.room.Room;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Query plan regression test of the DAOs on the real Room schema, in memory, seeded with
+ * SEED_TASKS tasks. Every DAO method is called, and each statement Room sends to sqlite for it
+ * goes through EXPLAIN QUERY PLAN first (see ExplainingFactory), so the audited sql is the one
+ * of the @Query. Fails on :
+ * - a full table scan or a temp b-tree sort, unless allowed for the method
+ * - a DAO method without its audit() here
+ * - a call OUTLIER_FACTOR times over its latency budget on the seeded data.
+ * Latency depends on the device and its load : the calls over budget are only logged
+ * Writes run in a rolled back transaction
+ * -------------------------------------------------------------------------------------------------
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    private static final String TAG = QueryPlanTest.class.getSimpleName();
+
+    // seeded data set
+    private static final int SEED_TASKS    = 10000;
+    private static final int SEED_TAGS     = 20;
+    private static final int SEED_ARCHIVED = 5000;
+
+    // latency budgets, and the factor over them failing the test
+    private static final long POINT_MS = 5;
+    private static final long RANGE_MS = 30;
+    private static final long LIST_MS  = 150;
+    private static final int OUTLIER_FACTOR = 10;
+
+    // allowed plan steps
+    private static final int ALLOW_SCAN      = 1;
+    private static final int ALLOW_TEMP_SORT = 2;
+
+    private static final long LIVE_DATA_TIMEOUT_S = 10;
+
+    private static final long NOW = System.currentTimeMillis();
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final int[] IDS = {1, 2, 3, 4, 5};
+
+    private static final Class<?>[] DAOS = {TaskDao.class, OutboxDao.class, ArchiveDao.class,
+            ClosureDao.class, TagDao.class, RecurrenceDao.class, BodyDao.class, DraftDao.class,
+            CounterDao.class};
+
+    private static AppDatabase sDb;
+
+    // DAO method being audited, "Dao.method" : plans are recorded while it is set
+    private static volatile String sCurrent;
+
+    // by DAO method : plan steps of its statements, allowed steps, latency
+    private static final Map<String, List<String>> sPlans =
+            Collections.synchronizedMap(new LinkedHashMap<String, List<String>>());
+    private static final Map<String, Integer> sAllowed = new HashMap<>();
+    private static final List<String> sOutliers = new ArrayList<>();
+
+    @BeforeClass
+    public static void auditDaos() throws Throwable {
+        sDb = Room.inMemoryDatabaseBuilder(InstrumentationRegistry.getTargetContext(), AppDatabase.class)
+                .addCallback(AppDatabase.CREATE_CALLBACK)
+                .openHelperFactory(new ExplainingFactory(new FrameworkSQLiteOpenHelperFactory()))
+                .build();
+        seed(sDb.getOpenHelper().getWritableDatabase());
+
+        Date now = new Date(NOW);
+
+        TaskDao taskDao = sDb.taskDao();
+        audit(taskDao, "loadAllTasks", LIST_MS);
+        audit(taskDao, "insertTask", POINT_MS,
+                new TaskEntry(0, "audit", 1, now, null, 1e9, null, null, "audit", null));
+        audit(taskDao, "updateTask", POINT_MS,
+                new TaskEntry(10, "audit", 1, now, null, 1e9, null, null, uid(10), 9));
+        audit(taskDao, "updateDescription", POINT_MS, 10, "audit", now);
+        audit(taskDao, "updatePriority", POINT_MS, 10, 2, 1e9, now);
+        audit(taskDao, "updateDueAt", POINT_MS, 10, new Date(NOW + DAY), now);
+        audit(taskDao, "getMaxRank", POINT_MS, 1);
+        audit(taskDao, "updateRank", POINT_MS, 10, 512.0);
+        audit(taskDao, "loadIdsByRank", LIST_MS, 1);
+        audit(taskDao, "softDeleteTasks", RANGE_MS, IDS, now);
+        audit(taskDao, "completeTasks", RANGE_MS, IDS, now);
+        audit(taskDao, "softDeleteTask", RANGE_MS, 10, now);
+        audit(taskDao, "restoreTask", RANGE_MS, 20);
+        audit(taskDao, "loadExpiredTombstoneIds", RANGE_MS, NOW, 200);
+        audit(taskDao, "loadTasksByIds", POINT_MS, IDS);
+        audit(taskDao, "getTaskUid", POINT_MS, 10);
+        audit(taskDao, "removeTasks", RANGE_MS, IDS);
+        audit(taskDao, "getTaskByUid", POINT_MS, uid(10));
+        audit(taskDao, "deleteTask", POINT_MS,
+                new TaskEntry(10, "audit", 1, now, null, 1e9, null, null, uid(10), 9));
+        audit(taskDao, "loadTaskById", POINT_MS, 10);
+        audit(taskDao, "getTaskById", POINT_MS, 10);
+        audit(taskDao, "loadRemindersAfter", RANGE_MS, NOW, 32);
+        audit(taskDao, "loadTasksDueBetween", RANGE_MS, NOW, NOW + DAY, 3);
+        audit(taskDao, "countTasksDueBetween", RANGE_MS, NOW, NOW + DAY);
+
+        OutboxDao outboxDao = sDb.outboxDao();
+        audit(outboxDao, "getEntry", POINT_MS, 10);
+        audit(outboxDao, "upsertEntry", POINT_MS,
+                new OutboxEntry(10, uid(10), OutboxEntry.OP_UPDATE, SEED_TASKS + 1, NOW));
+        audit(outboxDao, "deleteEntry", POINT_MS, 10);
+        audit(outboxDao, "getMaxSeq", POINT_MS);
+        audit(outboxDao, "loadBatch", RANGE_MS, 0L, 500);
+        audit(outboxDao, "deleteIfUnchanged", POINT_MS, 11, 11L);
+        // count of the seq index : no narrower way to count
+        audit(outboxDao, "countEntries", RANGE_MS);
+
+        ArchiveDao archiveDao = sDb.archiveDao();
+        audit(archiveDao, "loadArchivedTasks", RANGE_MS, 100);
+        audit(archiveDao, "loadArchiveCandidates", RANGE_MS, NOW - 30 * DAY, 200);
+        audit(archiveDao, "insertArchivedTasks", POINT_MS, Collections.singletonList(
+                new ArchivedTaskEntry(SEED_TASKS + SEED_ARCHIVED + 1, "audit", 1, now, null, 1e9,
+                        now, null, "audit", null)));
+        audit(archiveDao, "getArchivedTaskByUid", POINT_MS, uid(SEED_TASKS + 10));
+        audit(archiveDao, "deleteArchivedTask", POINT_MS, SEED_TASKS + 10);
+
+        ClosureDao closureDao = sDb.closureDao();
+        audit(closureDao, "insertRows", POINT_MS, Collections.singletonList(new TaskClosure(11, 12, 1)));
+        audit(closureDao, "loadAncestorRows", POINT_MS, 10);
+        audit(closureDao, "loadSubtreeIds", POINT_MS, IDS);
+        // children of a single task : a small sort
+        auditAllowing(ALLOW_TEMP_SORT, closureDao, "loadChildren", RANGE_MS, 9);
+        audit(closureDao, "countDescendants", POINT_MS, 9);
+        audit(closureDao, "deleteRowsOfDescendants", POINT_MS, IDS);
+        audit(closureDao, "deleteRowsOfAncestors", POINT_MS, IDS);
+
+        TagDao tagDao = sDb.tagDao();
+        audit(tagDao, "loadAllTags", RANGE_MS);
+        audit(tagDao, "getAllTags", RANGE_MS);
+        audit(tagDao, "getTagId", POINT_MS, "tag 1");
+        audit(tagDao, "insertTag", POINT_MS, new TagEntry("audit"));
+        audit(tagDao, "loadTagIdsOfTask", POINT_MS, 10);
+        // whole join table on purpose : builds the in-memory TagBitmapIndex once
+        auditAllowing(ALLOW_SCAN, tagDao, "loadAllTaskTags", LIST_MS);
+        audit(tagDao, "insertTaskTags", POINT_MS, Collections.singletonList(new TaskTag(10, 20)));
+        audit(tagDao, "deleteTaskTags", POINT_MS, 10, IDS);
+        audit(tagDao, "deleteTagsOfTasks", POINT_MS, IDS);
+
+        RecurrenceDao recurrenceDao = sDb.recurrenceDao();
+        audit(recurrenceDao, "getRule", POINT_MS, 50);
+        audit(recurrenceDao, "upsertRule", POINT_MS,
+                new RecurrenceRule(10, RecurrenceRule.UNIT_DAY, 1, 0, NOW, null));
+        audit(recurrenceDao, "deleteRule", POINT_MS, 50);
+        audit(recurrenceDao, "loadActiveRules", RANGE_MS, NOW, NOW + 7 * DAY);
+        audit(recurrenceDao, "loadStates", RANGE_MS, NOW, NOW + 7 * DAY);
+        audit(recurrenceDao, "upsertState", POINT_MS,
+                new OccurrenceState(50, NOW, OccurrenceState.STATE_COMPLETED));
+        audit(recurrenceDao, "deleteState", POINT_MS, 50, NOW);
+        audit(recurrenceDao, "deleteRulesOfTasks", POINT_MS, IDS);
+        audit(recurrenceDao, "deleteStatesOfTasks", POINT_MS, IDS);
+
+        BodyDao bodyDao = sDb.bodyDao();
+        audit(bodyDao, "getBody", POINT_MS, 10);
+        audit(bodyDao, "loadBodies", POINT_MS, IDS);
+        audit(bodyDao, "upsertBody", POINT_MS, TaskBodyCodec.encode(10, "audit"));
+        audit(bodyDao, "deleteBody", POINT_MS, 10);
+        audit(bodyDao, "deleteBodiesOfTasks", POINT_MS, IDS);
+
+        DraftDao draftDao = sDb.draftDao();
+        audit(draftDao, "getDraft", POINT_MS, 10);
+        audit(draftDao, "upsertDraft", POINT_MS, new TaskDraft(10, "audit", 1, null, NOW));
+        audit(draftDao, "deleteDraft", POINT_MS, 10);
+        audit(draftDao, "deleteDraftsOfTasks", POINT_MS, IDS);
+
+        CounterDao counterDao = sDb.counterDao();
+        audit(counterDao, "loadHeaderCounters", POINT_MS, TaskCounter.dayCounter(NOW));
+        // a row per priority and per day : small table
+        auditAllowing(ALLOW_SCAN, counterDao, "getAllCounters", RANGE_MS);
+        // reconciliation in idle maintenance only
+        auditAllowing(ALLOW_SCAN | ALLOW_TEMP_SORT, counterDao, "countFromTasks", LIST_MS);
+        auditAllowing(ALLOW_SCAN, counterDao, "deleteAllCounters", RANGE_MS);
+        // the zero counters are anywhere in the table
+        auditAllowing(ALLOW_SCAN, counterDao, "deleteStaleCounters", RANGE_MS, TaskCounter.dayCounter(NOW));
+        audit(counterDao, "insertCounters", POINT_MS,
+                Collections.singletonList(new TaskCounter("audit", 1)));
+    }
+
+    @AfterClass
+    public static void closeDb() {
+        sDb.close();
+    }
+
+    // "SCAN TABLE task" up to sqlite 3.35, "SCAN task" after; "SCAN ... USING INDEX" reads an index
+    @Test
+    public void noFullTableScan() {
+        assertTrue(violations(ALLOW_SCAN).toString(), violations(ALLOW_SCAN).isEmpty());
+    }
+
+    @Test
+    public void noTempSort() {
+        assertTrue(violations(ALLOW_TEMP_SORT).toString(), violations(ALLOW_TEMP_SORT).isEmpty());
+    }
+
+    @Test
+    public void noLatencyOutlier() {
+        assertTrue(sOutliers.toString(), sOutliers.isEmpty());
+    }
+
+    // a new DAO method needs its audit() call
+    @Test
+    public void everyDaoMethodIsAudited() {
+        List<String> missing = new ArrayList<>();
+        for (Class<?> dao : DAOS) {
+            for (Method method : dao.getDeclaredMethods()) {
+                String name = dao.getSimpleName() + "." + method.getName();
+                if (!sPlans.containsKey(name)) {
+                    missing.add(name);
+                }
+            }
+        }
+        assertTrue("Not audited : " + missing, missing.isEmpty());
+    }
+
+    // plan steps of a kind that their method doesn't allow
+    private static List<String> violations(int kind) {
+        List<String> violations = new ArrayList<>();
+        synchronized (sPlans) {
+            for (Map.Entry<String, List<String>> plan : sPlans.entrySet()) {
+                if ((sAllowed.get(plan.getKey()) & kind) != 0) {
+                    continue;
+                }
+                for (String detail : plan.getValue()) {
+                    boolean fullScan = detail.startsWith("SCAN ") && !detail.contains(" USING ");
+                    boolean tempSort = detail.contains("USE TEMP B-TREE");
+                    if (kind == ALLOW_SCAN ? fullScan : tempSort) {
+                        violations.add(plan.getKey() + " : " + detail);
+                    }
+                }
+            }
+        }
+        return violations;
+    }
+
+    private static void audit(Object dao, String methodName, long budgetMs, Object... args) throws Throwable {
+        auditAllowing(0, dao, methodName, budgetMs, args);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Call a DAO method with sample arguments, recording its plans and latency.
+     * LiveData queries are observed until their first value
+     * @param allowed ALLOW_SCAN, ALLOW_TEMP_SORT or 0
+     * ---------------------------------------------------------------------------------------------
+     */
+    private static void auditAllowing(int allowed, Object dao, String methodName, long budgetMs,
+                                      Object... args) throws Throwable {
+        // the Room implementation of one DAO interface
+        Class<?> daoInterface = dao.getClass().getInterfaces()[0];
+        Method method = null;
+        for (Method candidate : daoInterface.getDeclaredMethods()) {
+            if (candidate.getName().equals(methodName)) {
+                method = candidate;
+            }
+        }
+        String name = daoInterface.getSimpleName() + "." + methodName;
+        assertTrue("No method " + name, method != null);
+
+        sPlans.put(name, Collections.synchronizedList(new ArrayList<String>()));
+        sAllowed.put(name, allowed);
+        sCurrent = name;
+        long startedAt = SystemClock.elapsedRealtime();
+        try {
+            if (LiveData.class.isAssignableFrom(method.getReturnType())) {
+                // computed on the Room executor : outside of a transaction of this thread
+                awaitValue((LiveData<?>) invoke(dao, method, args));
+            } else {
+                sDb.beginTransaction();
+                try {
+                    invoke(dao, method, args);
+                } finally {
+                    sDb.endTransaction();
+                }
+            }
+        } finally {
+            sCurrent = null;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        if (elapsed > budgetMs) {
+            String slow = name + " : " + elapsed + " ms, budget " + budgetMs + " ms";
+            Log.w(TAG, slow);
+            if (elapsed > budgetMs * OUTLIER_FACTOR) {
+                sOutliers.add(slow);
+            }
+        }
+    }
+
+    private static void awaitValue(LiveData<?> liveData) throws InterruptedException {
+        @SuppressWarnings("unchecked")
+        final LiveData<Object> data = (LiveData<Object>) liveData;
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Observer<Object> observer = new Observer<Object>() {
+            @Override
+            public void onChanged(@Nullable Object value) {
+                latch.countDown();
+            }
+        };
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                data.observeForever(observer);
+            }
+        });
+        try {
+            assertTrue("No value from " + sCurrent, latch.await(LIVE_DATA_TIMEOUT_S, TimeUnit.SECONDS));
+        } finally {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    data.removeObserver(observer);
+                }
+            });
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Open helpers whose databases explain each query and compiled statement before running it,
+     * while a DAO method is audited. The statements of Room's invalidation tracker are left out
+     * ---------------------------------------------------------------------------------------------
+     */
+    private static class ExplainingFactory implements SupportSQLiteOpenHelper.Factory {
+        private final SupportSQLiteOpenHelper.Factory mDelegate;
+
+        ExplainingFactory(SupportSQLiteOpenHelper.Factory delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public SupportSQLiteOpenHelper create(SupportSQLiteOpenHelper.Configuration configuration) {
+            final SupportSQLiteOpenHelper helper = mDelegate.create(configuration);
+            return (SupportSQLiteOpenHelper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{SupportSQLiteOpenHelper.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            Object result = QueryPlanTest.invoke(helper, method, args);
+                            return result instanceof SupportSQLiteDatabase
+                                    ? explaining((SupportSQLiteDatabase) result) : result;
+                        }
+                    });
+        }
+
+        private static SupportSQLiteDatabase explaining(final SupportSQLiteDatabase database) {
+            return (SupportSQLiteDatabase) Proxy.newProxyInstance(SupportSQLiteDatabase.class.getClassLoader(),
+                    new Class<?>[]{SupportSQLiteDatabase.class}, new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            String name = method.getName();
+                            if (sCurrent != null && args != null && args.length > 0) {
+                                if (args[0] instanceof String
+                                        && (name.equals("query") || name.equals("compileStatement"))) {
+                                    // compiled statements are explained with their arguments unbound
+                                    Object[] bindArgs = args.length > 1 && args[1] instanceof Object[]
+                                            ? (Object[]) args[1] : null;
+                                    explain(database, (String) args[0],
+                                            new SimpleSQLiteQuery(EXPLAIN + args[0], bindArgs));
+                                } else if (args[0] instanceof SupportSQLiteQuery && name.equals("query")) {
+                                    SupportSQLiteQuery query = (SupportSQLiteQuery) args[0];
+                                    explain(database, query.getSql(), explainQuery(query));
+                                }
+                            }
+                            return QueryPlanTest.invoke(database, method, args);
+                        }
+                    });
+        }
+    }
+
+    private static final String EXPLAIN = "EXPLAIN QUERY PLAN ";
+
+    // the same query and bindings, explained
+    private static SupportSQLiteQuery explainQuery(final SupportSQLiteQuery query) {
+        return (SupportSQLiteQuery) Proxy.newProxyInstance(SupportSQLiteQuery.class.getClassLoader(),
+                new Class<?>[]{SupportSQLiteQuery.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getSql")) {
+                            return EXPLAIN + query.getSql();
+                        }
+                        return QueryPlanTest.invoke(query, method, args);
+                    }
+                });
+    }
+
+    private static void explain(SupportSQLiteDatabase database, String sql, SupportSQLiteQuery explainQuery) {
+        String statement = sql.trim().toUpperCase(Locale.US);
+        boolean dml = statement.startsWith("SELECT") || statement.startsWith("INSERT")
+                || statement.startsWith("UPDATE") || statement.startsWith("DELETE")
+                || statement.startsWith("REPLACE") || statement.startsWith("WITH");
+        if (!dml || statement.contains("ROOM_TABLE_MODIFICATION_LOG") || statement.contains("ROOM_MASTER_TABLE")) {
+            return;
+        }
+        List<String> plan = sPlans.get(sCurrent);
+        Cursor cursor = database.query(explainQuery);
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Seed : SEED_TASKS tasks over the 3 priorities, a third with a due date, a quarter completed,
+     * 1 in 20 deleted, 1 in 10 a subtask, 2 tags each, 1 in 50 repeating; plus the archive
+     * ---------------------------------------------------------------------------------------------
+     */
+    private static void seed(SupportSQLiteDatabase database) {
+        database.beginTransaction();
+        try {
+            SupportSQLiteStatement task = database.compileStatement("INSERT INTO task (id, description, "
+                    + "priority, updated_at, due_at, sort_rank, completed_at, deleted_at, uid, parent_id) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            SupportSQLiteStatement closure = database.compileStatement(
+                    "INSERT INTO task_closure (ancestor_id, descendant_id, depth) VALUES (?, ?, ?)");
+            SupportSQLiteStatement taskTag = database.compileStatement(
+                    "INSERT INTO task_tag (task_id, tag_id) VALUES (?, ?)");
+            SupportSQLiteStatement outbox = database.compileStatement("INSERT INTO task_outbox "
+                    + "(task_id, uid, op, seq, queued_at) VALUES (?, ?, ?, ?, ?)");
+            SupportSQLiteStatement rule = database.compileStatement("INSERT INTO task_recurrence "
+                    + "(task_id, unit, every, weekdays, starts_at, until_at) VALUES (?, ?, 1, 0, ?, NULL)");
+
+            for (int id = 1; id <= SEED_TASKS; id++) {
+                // a subtask hangs under the task just before it
+                boolean subtask = id % 10 == 0;
+                task.bindLong(1, id);
+                task.bindString(2, "task " + id);
+                task.bindLong(3, id % 3 + 1);
+                task.bindLong(4, NOW - id * 60000L);
+                bindOptional(task, 5, id % 3 == 0 ? NOW + (id % 100) * DAY : null);
+                task.bindDouble(6, id * TaskRepository.RANK_GAP);
+                bindOptional(task, 7, id % 4 == 0 ? NOW - (id % 60) * DAY : null);
+                bindOptional(task, 8, id % 20 == 0 ? NOW - (id % 3) * DAY : null);
+                task.bindString(9, uid(id));
+                bindOptional(task, 10, subtask ? (long) (id - 1) : null);
+                task.executeInsert();
+
+                insertClosure(closure, id, id, 0);
+                if (subtask) {
+                    insertClosure(closure, id - 1, id, 1);
+                }
+                for (int tag = 0; tag < 2; tag++) {
+                    taskTag.bindLong(1, id);
+                    taskTag.bindLong(2, (id + tag * 7) % SEED_TAGS + 1);
+                    taskTag.executeInsert();
+                }
+                if (id % 10 == 1) {
+                    outbox.bindLong(1, id);
+                    outbox.bindString(2, uid(id));
+                    outbox.bindLong(3, OutboxEntry.OP_UPDATE);
+                    outbox.bindLong(4, id);
+                    outbox.bindLong(5, NOW);
+                    outbox.executeInsert();
+                }
+                if (id % 50 == 0) {
+                    rule.bindLong(1, id);
+                    rule.bindLong(2, id % 3 + 1);
+                    rule.bindLong(3, NOW - (id % 365) * DAY);
+                    rule.executeInsert();
+                }
+            }
+
+            for (int tag = 1; tag <= SEED_TAGS; tag++) {
+                database.execSQL("INSERT INTO tag (id, name) VALUES (?, ?)", new Object[]{tag, "tag " + tag});
+            }
+            database.execSQL("INSERT INTO task_archive (id, description, priority, updated_at, due_at, "
+                    + "sort_rank, completed_at, deleted_at, uid, parent_id) "
+                    + "SELECT id + " + SEED_TASKS + ", description, priority, updated_at, due_at, sort_rank, "
+                    + (NOW - 60 * DAY) + " - id * 1000, NULL, uid || 'a', NULL FROM task WHERE id <= " + SEED_ARCHIVED);
+            database.execSQL("UPDATE task_archive SET uid = ? WHERE id = ?",
+                    new Object[]{uid(SEED_TASKS + 10), SEED_TASKS + 10});
+            database.execSQL("INSERT INTO task_occurrence (task_id, occurs_at, state) "
+                    + "SELECT task_id, starts_at + 86400000, 1 FROM task_recurrence");
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static void insertClosure(SupportSQLiteStatement closure, long ancestorId, long descendantId, int depth) {
+        closure.bindLong(1, ancestorId);
+        closure.bindLong(2, descendantId);
+        closure.bindLong(3, depth);
+        closure.executeInsert();
+    }
+
+    private static void bindOptional(SupportSQLiteStatement statement, int index, Long value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, value);
+        }
+    }
+
+    private static String uid(int id) {
+        return String.format("%032x", id);
+    }
+}
@@ -4,19 +4,44 @@ package com.example.android.todolist;
 import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.Observer;
 import android.arch.lifecycle.ViewModelProviders;
+import android.app.DatePickerDialog;
+import android.app.TimePickerDialog;
 import android.content.Intent;
+import android.content.DialogInterface;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.Nullable;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.View;
 import android.widget.Button;
+import android.widget.DatePicker;
 import android.widget.EditText;
 import android.widget.RadioGroup;
+import android.widget.TextView;
+import android.widget.TimePicker;
+import android.widget.Toast;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.RecurrenceRule;
+import com.example.android.todolist.database.TagEntry;
+import com.example.android.todolist.database.TaskDraft;
 import com.example.android.todolist.database.TaskEntry;
+import com.example.android.todolist.database.TaskRepository;
 
 /**
  * -----------------------------------------------------------------------------
@@ -28,17 +53,44 @@ public class AddTaskActivity extends AppCompatActivity {
     // Extra for the task ID to be received in the intent
     public static final String EXTRA_TASK_ID = "extraTaskId";
 
+    // Extra for the parent task ID when adding a subtask
+    public static final String EXTRA_PARENT_ID = "extraParentId";
+
     // Extra for the task ID to be received after device rotation
     public static final String INSTANCE_TASK_ID = "instanceTaskId";
 
+    // Extra for the due date to be kept after device rotation
+    public static final String INSTANCE_DUE_AT = "instanceDueAt";
+
+    // Extra for the chosen tags to be kept after device rotation
+    public static final String INSTANCE_TAG_IDS = "instanceTagIds";
+
+    // Extra for the repeat choice to be kept after device rotation
+    public static final String INSTANCE_REPEAT = "instanceRepeat";
+
     // Constants for priority
     public static final int PRIORITY_HIGH = 1;
     public static final int PRIORITY_MEDIUM = 2;
     public static final int PRIORITY_LOW = 3;
 
+    // Constants for the repeat choices, same order as the repeat_labels array
+    private static final int REPEAT_NEVER    = 0;
+    private static final int REPEAT_DAILY    = 1;
+    private static final int REPEAT_WEEKDAYS = 2;
+    private static final int REPEAT_WEEKLY   = 3;
+    private static final int REPEAT_BIWEEKLY = 4;
+    private static final int REPEAT_MONTHLY  = 5;
+
+    // monday to friday, bit (Calendar.DAY_OF_WEEK - 1)
+    private static final int WEEKDAYS_MASK = (1 << (Calendar.MONDAY - 1)) | (1 << (Calendar.TUESDAY - 1))
+            | (1 << (Calendar.WEDNESDAY - 1)) | (1 << (Calendar.THURSDAY - 1)) | (1 << (Calendar.FRIDAY - 1));
+
     // Constant for default task id to be used when not in update mode
     private static final int DEFAULT_TASK_ID = -1;
 
+    // quiet time after an edit before the draft is written
+    private static final long DRAFT_DELAY_MS = 800;
+
     // Constant for logging
     private static final String TAG = AddTaskActivity.class.getSimpleName();
 
@@ -46,14 +98,48 @@ public class AddTaskActivity extends AppCompatActivity {
     EditText mEditText;
     RadioGroup mRadioGroup;
     Button mButton;
+    TextView mDueDateView;
+    TextView mTagsView;
+    TextView mRepeatView;
 
     // set the task id as default: will be changed in case of update
     private int mTaskId = DEFAULT_TASK_ID;
 
+    // reminder time chosen by user, null if none
+    private Date mDueAt;
+
+    // task loaded from db in update mode : edits are applied on it to track the dirty fields
+    private TaskEntry mTask;
+
+    // all the tags, the ones chosen for the task, and in update mode the ones saved in db
+    private List<TagEntry> mAllTags = Collections.emptyList();
+    private final SparseBooleanArray mTagIds = new SparseBooleanArray();
+    private int[] mSavedTagIds = new int[0];
+
+    // repeat choice, REPEAT_*, and the one saved in db
+    private int mRepeat = REPEAT_NEVER;
+    private int mSavedRepeat = REPEAT_NEVER;
+
+    // Draft autosave : an edit (re)starts the delay, so typing costs one write per pause.
+    // Drafts handed to the disk while a write is waiting replace it : only the last is written
+    private final Handler mDraftHandler = new Handler();
+    private final Runnable mSaveDraft = new Runnable() {
+        @Override
+        public void run() {
+            saveDraft();
+        }
+    };
+    private final AtomicReference<TaskDraft> mPendingDraft = new AtomicReference<>();
+    // last draft written or restored : an unchanged state is not written again
+    private TaskDraft mLastDraft;
+    // no draft is written before the saved one is restored, nor after the task is saved
+    private boolean mDraftReady = false;
+    private boolean mSaved = false;
+
     // db reference
     private AppDatabase mDb;
 
-    protected void onCreate(Bundle savedInstanceState) {
+    protected void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_task);
 
@@ -67,39 +153,98 @@ public class AddTaskActivity extends AppCompatActivity {
         if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCE_TASK_ID)) {
             mTaskId = savedInstanceState.getInt(INSTANCE_TASK_ID, DEFAULT_TASK_ID);
         }
+        if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCE_DUE_AT)) {
+            setDueAtInViews(new Date(savedInstanceState.getLong(INSTANCE_DUE_AT)));
+        }
+        if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCE_TAG_IDS)) {
+            for (int tagId : savedInstanceState.getIntArray(INSTANCE_TAG_IDS)) {
+                mTagIds.put(tagId, true);
+            }
+        }
 
         Intent intent = getIntent();
         // check if in update mode : EXTRA_TASK_ID key will be present in intent
         if (intent != null && intent.hasExtra(EXTRA_TASK_ID)) {
             // change button text for update
             mButton.setText(R.string.update_button);
+            // enabled once the task is loaded : the edits are applied on it
+            mButton.setEnabled(false);
             // if id is the default one insert the new to be updated
             if (mTaskId == DEFAULT_TASK_ID) {
                 mTaskId = intent.getIntExtra(EXTRA_TASK_ID, DEFAULT_TASK_ID);
-                // show current data of the task to be updated using LiveData/ViewModel
+            }
+            // show current data of the task to be updated using LiveData/ViewModel
 
-                // instantiate AddTaskViewModelFactory object to inject mTaskId to ViewModel
-                AddTaskViewModelFactory factory = new AddTaskViewModelFactory(mDb,mTaskId);
+            // instantiate AddTaskViewModelFactory object to inject mTaskId to ViewModel
+            AddTaskViewModelFactory factory = new AddTaskViewModelFactory(mDb,mTaskId);
 
-                final AddTaskViewModel viewModel = ViewModelProviders.of(this, factory).get(AddTaskViewModel.class);
+            final AddTaskViewModel viewModel = ViewModelProviders.of(this, factory).get(AddTaskViewModel.class);
 
-                // populate the UI in case of upgrade with the data of the mTaksId task
-                final LiveData<TaskEntry> task = viewModel.getTask();
+            // populate the UI in case of upgrade with the data of the mTaksId task
+            final LiveData<TaskEntry> task = viewModel.getTask();
 
-                // keep UI updated through observer
-                task.observe(this, new Observer<TaskEntry>() {
-                    @Override
-                    public void onChanged(@Nullable TaskEntry taskEntry) {
-                        // don't need the observe while populating UI
-                        task.removeObserver(this);
-                        Log.d(TAG, "Received data from db via LiveData");
-                        populateUI(taskEntry);
+            // keep UI updated through observer
+            task.observe(this, new Observer<TaskEntry>() {
+                @Override
+                public void onChanged(@Nullable final TaskEntry taskEntry) {
+                    // don't need the observe while populating UI
+                    task.removeObserver(this);
+                    Log.d(TAG, "Received data from db via LiveData");
+                    if (taskEntry == null) {
+                        return;
                     }
-                });
-            }
+                    // the row has a preview of a long description : read and inflate the body,
+                    // with the draft of unsaved edits if any
+                    final int draftKey = getDraftKey();
+                    AppExecutors.getInstance().diskIO().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+                            repository.loadFullDescription(taskEntry);
+                            final TaskDraft draft = savedInstanceState == null
+                                    ? repository.loadDraft(draftKey) : null;
+                            AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    // keep the loaded task as base for the changes,
+                                    // saving waits for it : a preview must not replace the text
+                                    mTask = taskEntry;
+                                    mButton.setEnabled(true);
+                                    // after rotation the views already hold the user edits
+                                    if (savedInstanceState == null) {
+                                        populateUI(taskEntry);
+                                        restoreDraft(draft);
+                                    }
+                                }
+                            });
+                        }
+                    });
+                }
+            });
+        }
+
+        if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCE_REPEAT)) {
+            setRepeatInViews(savedInstanceState.getInt(INSTANCE_REPEAT));
+        }
+
+        loadTags(savedInstanceState == null);
+        loadRepeat(savedInstanceState == null);
+
+        if (savedInstanceState != null) {
+            // the views hold the edits, already autosaved
+            mDraftReady = true;
+        } else if (mTaskId == DEFAULT_TASK_ID) {
+            loadNewTaskDraft();
         }
     }
 
+    // the edits are kept when leaving without saving
+    @Override
+    protected void onPause() {
+        super.onPause();
+        saveDraft();
+    }
+
     /**
      * ---------------------------------------------------------------------------------------------
      * save insert data in case of rotations
@@ -109,6 +254,11 @@ public class AddTaskActivity extends AppCompatActivity {
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         outState.putInt(INSTANCE_TASK_ID, mTaskId);
+        outState.putIntArray(INSTANCE_TAG_IDS, getTagIds());
+        outState.putInt(INSTANCE_REPEAT, mRepeat);
+        if (mDueAt != null) {
+            outState.putLong(INSTANCE_DUE_AT, mDueAt.getTime());
+        }
         super.onSaveInstanceState(outState);
     }
 
@@ -121,6 +271,57 @@ public class AddTaskActivity extends AppCompatActivity {
         mEditText = findViewById(R.id.editTextTaskDescription);
         mRadioGroup = findViewById(R.id.radioGroup);
 
+        mEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable text) {
+                scheduleDraftSave();
+            }
+        });
+        mRadioGroup.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(RadioGroup group, int checkedId) {
+                scheduleDraftSave();
+            }
+        });
+        mDueDateView = findViewById(R.id.dueDateTextView);
+        mTagsView = findViewById(R.id.tagsTextView);
+        mRepeatView = findViewById(R.id.repeatTextView);
+
+        findViewById(R.id.setRepeatButton).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                pickRepeat();
+            }
+        });
+
+        findViewById(R.id.editTagsButton).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                pickTags();
+            }
+        });
+
+        findViewById(R.id.setDueDateButton).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                pickDueDate();
+            }
+        });
+        findViewById(R.id.clearDueDateButton).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                setDueAtInViews(null);
+            }
+        });
+
         mButton = findViewById(R.id.saveButton);
         mButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -143,6 +344,7 @@ public class AddTaskActivity extends AppCompatActivity {
 
         mEditText.setText(task.getDescription());
         setPriorityInViews(task.getPriority());
+        setDueAtInViews(task.getDueAt());
     }
 
 
@@ -154,13 +356,56 @@ public class AddTaskActivity extends AppCompatActivity {
     * -------------------------------------------------------------------------------------
     */
     public void onSaveButtonClicked() {
+        // already saving, the screen is closing
+        if (mSaved) {
+            return;
+        }
         // get task attributes from view
         String description = mEditText.getText().toString();
         int priority       = getPriorityFromViews();
         Date date          = new Date();
+        final Date dueAt   = mDueAt;
 
-        // create a new task obj and init with data inserted by user
-        final TaskEntry taskEntry = new TaskEntry(description, priority, date);
+        final int[] tagIds = getTagIds();
+        final boolean tagsChanged = !Arrays.equals(tagIds, mSavedTagIds);
+
+        // the due date is the first occurrence of a repeating task
+        if (mRepeat != REPEAT_NEVER && dueAt == null) {
+            Toast.makeText(this, R.string.repeat_needs_due_date, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final TaskEntry taskEntry;
+        if (mTaskId == DEFAULT_TASK_ID) {
+            // create a new task obj and init with data inserted by user
+            taskEntry = new TaskEntry(description, priority, date, dueAt);
+            if (getIntent().hasExtra(EXTRA_PARENT_ID)) {
+                taskEntry.setParentId(getIntent().getIntExtra(EXTRA_PARENT_ID, 0));
+            }
+        } else {
+            // task not loaded yet, the button is disabled until then
+            if (mTask == null) {
+                return;
+            }
+            // apply the edits on the loaded task, only the changed fields become dirty
+            taskEntry = mTask;
+            taskEntry.setDescription(description);
+            taskEntry.setPriority(priority);
+            taskEntry.setDueAt(dueAt);
+        }
+        // a due date change moves the start of the repeat rule, already dirty
+        final boolean unchanged = mTaskId != DEFAULT_TASK_ID
+                && !taskEntry.isDirty() && !tagsChanged && mRepeat == mSavedRepeat;
+
+        // no draft from now on, the one waiting is dropped
+        mSaved = true;
+        mDraftHandler.removeCallbacks(mSaveDraft);
+        mPendingDraft.set(null);
+        final int draftKey = getDraftKey();
+        final boolean dueAtChanged = mTaskId == DEFAULT_TASK_ID
+                || taskEntry.isFieldDirty(TaskEntry.FIELD_DUE_AT);
+        final int repeat = mRepeat;
+        final boolean repeatChanged = repeat != mSavedRepeat || (repeat != REPEAT_NEVER && dueAtChanged);
 
         // ----------------------------------------
         // Update db using executor
@@ -168,15 +413,39 @@ public class AddTaskActivity extends AppCompatActivity {
         AppExecutors.getInstance().diskIO().execute(new Runnable() {
             @Override
             public void run() {
-               if(mTaskId == DEFAULT_TASK_ID) {     // save a new task
-                   mDb.taskDao().insertTask(taskEntry);
-                   finish();
+               TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+               ReminderScheduler scheduler = ReminderScheduler.getInstance(getApplicationContext());
+               if (unchanged) {
+                   Log.d(TAG, "Task unchanged, nothing to save");
+               } else if(mTaskId == DEFAULT_TASK_ID) {     // save a new task
+                   int newId = repository.insertTask(taskEntry);
+                   repository.setTaskTags(newId, tagIds);
+                   if (repeat != REPEAT_NEVER) {
+                       repository.setRecurrence(newId, ruleOf(repeat, dueAt));
+                   }
+                   scheduler.onTaskSaved(newId, dueAt);
                }else{                               // update a previous task
-                   // set id to the task to update
-                   taskEntry.setId(mTaskId);
-                   // update task on db
-                   mDb.taskDao().updateTask(taskEntry);
+                   // write only the changed columns
+                   repository.saveChanges(taskEntry);
+                   if (tagsChanged) {
+                       repository.setTaskTags(mTaskId, tagIds);
+                   }
+                   if (repeatChanged) {
+                       repository.setRecurrence(mTaskId, ruleOf(repeat, dueAt));
+                   }
+                   if (dueAtChanged) {
+                       scheduler.onTaskSaved(mTaskId, dueAt);
+                   }
                }
+               repository.deleteDraft(draftKey);
+
+               // saved : back to the list, from the main thread
+               AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                   @Override
+                   public void run() {
+                       finish();
+                   }
+               });
             }
         });
 
@@ -223,4 +492,366 @@ public class AddTaskActivity extends AppCompatActivity {
                 ((RadioGroup) findViewById(R.id.radioGroup)).check(R.id.radButton3);
         }
     }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Ask the user for date and time of the reminder
+     * -----------------------------------------------------------------------------
+     */
+    private void pickDueDate() {
+        final Calendar calendar = Calendar.getInstance();
+        if (mDueAt != null) {
+            calendar.setTime(mDueAt);
+        }
+
+        new DatePickerDialog(this, new DatePickerDialog.OnDateSetListener() {
+            @Override
+            public void onDateSet(DatePicker view, int year, int month, int dayOfMonth) {
+                calendar.set(year, month, dayOfMonth);
+
+                new TimePickerDialog(AddTaskActivity.this, new TimePickerDialog.OnTimeSetListener() {
+                    @Override
+                    public void onTimeSet(TimePicker view, int hourOfDay, int minute) {
+                        calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
+                        calendar.set(Calendar.MINUTE, minute);
+                        calendar.set(Calendar.SECOND, 0);
+                        calendar.set(Calendar.MILLISECOND, 0);
+                        setDueAtInViews(calendar.getTime());
+                    }
+                }, calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE),
+                        android.text.format.DateFormat.is24HourFormat(AddTaskActivity.this)).show();
+            }
+        }, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH),
+                calendar.get(Calendar.DAY_OF_MONTH)).show();
+    }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Keep the chosen due date and show it
+     * @param dueAt the reminder time, null for none
+     * -----------------------------------------------------------------------------
+     */
+    public void setDueAtInViews(Date dueAt) {
+        mDueAt = dueAt;
+        scheduleDraftSave();
+        if (dueAt == null) {
+            mDueDateView.setText(R.string.no_due_date);
+        } else {
+            mDueDateView.setText(DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT)
+                    .format(dueAt));
+        }
+    }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Load the tags, and the ones of the task in update mode, on the disk executor
+     * @param fromDb true to show the task tags, false to keep the restored choice
+     * -----------------------------------------------------------------------------
+     */
+    private void loadTags(final boolean fromDb) {
+        final TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+        final int taskId = mTaskId;
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<TagEntry> tags = repository.loadTags();
+                final int[] savedTagIds = taskId == DEFAULT_TASK_ID
+                        ? new int[0] : repository.loadTaskTagIds(taskId);
+                Arrays.sort(savedTagIds);
+                AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mAllTags = tags;
+                        mSavedTagIds = savedTagIds;
+                        if (fromDb) {
+                            mTagIds.clear();
+                            for (int tagId : savedTagIds) {
+                                mTagIds.put(tagId, true);
+                            }
+                        }
+                        setTagsInViews();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Tag picker : check the existing tags or create a new one
+     * -----------------------------------------------------------------------------
+     */
+    private void pickTags() {
+        final List<TagEntry> tags = mAllTags;
+        CharSequence[] names = new CharSequence[tags.size()];
+        final boolean[] checked = new boolean[tags.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = tags.get(i).getName();
+            checked[i] = mTagIds.get(tags.get(i).getId());
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.tags_string)
+                .setMultiChoiceItems(names, checked, new DialogInterface.OnMultiChoiceClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                        checked[which] = isChecked;
+                    }
+                })
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        mTagIds.clear();
+                        for (int i = 0; i < checked.length; i++) {
+                            if (checked[i]) {
+                                mTagIds.put(tags.get(i).getId(), true);
+                            }
+                        }
+                        setTagsInViews();
+                    }
+                })
+                .setNeutralButton(R.string.new_tag_button, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        createTag();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    // ask for a name, the new tag is inserted at once and chosen for the task
+    private void createTag() {
+        final EditText nameView = new EditText(this);
+        nameView.setSingleLine();
+        nameView.setHint(R.string.new_tag_hint);
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.new_tag_button)
+                .setView(nameView)
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        final String name = nameView.getText().toString().trim();
+                        if (name.isEmpty()) {
+                            return;
+                        }
+                        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+                                final int tagId = repository.createTag(name);
+                                final List<TagEntry> tags = repository.loadTags();
+                                AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        mAllTags = tags;
+                                        mTagIds.put(tagId, true);
+                                        setTagsInViews();
+                                    }
+                                });
+                            }
+                        });
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Load the repeat rule of the task in update mode, on the disk executor
+     * @param fromDb true to show the saved rule, false to keep the restored choice
+     * -----------------------------------------------------------------------------
+     */
+    private void loadRepeat(final boolean fromDb) {
+        if (mTaskId == DEFAULT_TASK_ID) {
+            return;
+        }
+        final int taskId = mTaskId;
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final RecurrenceRule rule =
+                        TaskRepository.getInstance(getApplicationContext()).getRecurrence(taskId);
+                AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mSavedRepeat = repeatOf(rule);
+                        if (fromDb) {
+                            setRepeatInViews(mSavedRepeat);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void pickRepeat() {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.repeat_string)
+                .setSingleChoiceItems(R.array.repeat_labels, mRepeat, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        setRepeatInViews(which);
+                        dialog.dismiss();
+                    }
+                })
+                .show();
+    }
+
+    private void setRepeatInViews(int repeat) {
+        mRepeat = repeat;
+        mRepeatView.setText(getResources().getStringArray(R.array.repeat_labels)[repeat]);
+    }
+
+    // repeat choice to rule, starting at the due date
+    private static RecurrenceRule ruleOf(int repeat, Date dueAt) {
+        if (repeat == REPEAT_NEVER || dueAt == null) {
+            return null;
+        }
+        long startsAt = dueAt.getTime();
+        switch (repeat) {
+            case REPEAT_DAILY:
+                return new RecurrenceRule(0, RecurrenceRule.UNIT_DAY, 1, 0, startsAt, null);
+            case REPEAT_WEEKDAYS:
+                return new RecurrenceRule(0, RecurrenceRule.UNIT_WEEK, 1, WEEKDAYS_MASK, startsAt, null);
+            case REPEAT_WEEKLY:
+                return new RecurrenceRule(0, RecurrenceRule.UNIT_WEEK, 1, 0, startsAt, null);
+            case REPEAT_BIWEEKLY:
+                return new RecurrenceRule(0, RecurrenceRule.UNIT_WEEK, 2, 0, startsAt, null);
+            default:
+                return new RecurrenceRule(0, RecurrenceRule.UNIT_MONTH, 1, 0, startsAt, null);
+        }
+    }
+
+    // rule to repeat choice
+    private static int repeatOf(RecurrenceRule rule) {
+        if (rule == null) {
+            return REPEAT_NEVER;
+        }
+        switch (rule.getUnit()) {
+            case RecurrenceRule.UNIT_DAY:
+                return REPEAT_DAILY;
+            case RecurrenceRule.UNIT_WEEK:
+                if (rule.getWeekdays() != 0) {
+                    return REPEAT_WEEKDAYS;
+                }
+                return rule.getEvery() == 2 ? REPEAT_BIWEEKLY : REPEAT_WEEKLY;
+            default:
+                return REPEAT_MONTHLY;
+        }
+    }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Draft autosave : description, priority and due date. The tags and the repeat
+     * choice are picked in dialogs and are not part of the draft
+     * -----------------------------------------------------------------------------
+     */
+    private void scheduleDraftSave() {
+        if (!mSaved) {
+            mDraftHandler.removeCallbacks(mSaveDraft);
+            mDraftHandler.postDelayed(mSaveDraft, DRAFT_DELAY_MS);
+        }
+    }
+
+    private void saveDraft() {
+        mDraftHandler.removeCallbacks(mSaveDraft);
+        if (!mDraftReady || mSaved) {
+            return;
+        }
+        TaskDraft draft = getDraftFromViews();
+        if (draft.hasSameContent(mLastDraft)) {
+            return;
+        }
+        mLastDraft = draft;
+
+        // a write is already waiting on the disk executor : it will take this draft
+        if (mPendingDraft.getAndSet(draft) != null) {
+            return;
+        }
+        final TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                TaskDraft latest = mPendingDraft.getAndSet(null);
+                if (latest == null) {
+                    return;
+                }
+                if (latest.isBlank()) {
+                    repository.deleteDraft(latest.getTaskId());
+                } else {
+                    repository.saveDraft(latest);
+                }
+            }
+        });
+    }
+
+    // new task : the draft only, nothing to load from task
+    private void loadNewTaskDraft() {
+        final int key = getDraftKey();
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final TaskDraft draft = TaskRepository.getInstance(getApplicationContext()).loadDraft(key);
+                AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        restoreDraft(draft);
+                    }
+                });
+            }
+        });
+    }
+
+    // show the unsaved edits over the task, then autosave from this state
+    private void restoreDraft(TaskDraft draft) {
+        if (draft != null) {
+            Log.d(TAG, "Restoring the draft saved at " + new Date(draft.getSavedAt()));
+            mEditText.setText(draft.getDescription());
+            setPriorityInViews(draft.getPriority());
+            setDueAtInViews(draft.getDueAt() == null ? null : new Date(draft.getDueAt()));
+        }
+        mLastDraft = getDraftFromViews();
+        mDraftReady = true;
+    }
+
+    private TaskDraft getDraftFromViews() {
+        return new TaskDraft(getDraftKey(), mEditText.getText().toString(), getPriorityFromViews(),
+                mDueAt == null ? null : mDueAt.getTime(), System.currentTimeMillis());
+    }
+
+    // task id, or a key per parent for a new task
+    private int getDraftKey() {
+        if (mTaskId != DEFAULT_TASK_ID) {
+            return mTaskId;
+        }
+        return getIntent().hasExtra(EXTRA_PARENT_ID)
+                ? TaskDraft.newSubtaskKey(getIntent().getIntExtra(EXTRA_PARENT_ID, 0))
+                : TaskDraft.NEW_TASK_KEY;
+    }
+
+    // chosen tag ids, sorted
+    private int[] getTagIds() {
+        int[] tagIds = new int[mTagIds.size()];
+        for (int i = 0; i < tagIds.length; i++) {
+            tagIds[i] = mTagIds.keyAt(i);
+        }
+        return tagIds;
+    }
+
+    private void setTagsInViews() {
+        List<String> names = new ArrayList<>();
+        for (TagEntry tag : mAllTags) {
+            if (mTagIds.get(tag.getId())) {
+                names.add(tag.getName());
+            }
+        }
+        if (names.isEmpty()) {
+            mTagsView.setText(R.string.no_tags);
+        } else {
+            mTagsView.setText(TextUtils.join(", ", names));
+        }
+    }
 }
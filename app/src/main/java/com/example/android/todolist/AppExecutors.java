@@ -31,11 +31,14 @@ public class AppExecutors {
     public static AppExecutors getInstance() {
         if(singleInstance == null){
             synchronized (LOCK){
-                singleInstance = new AppExecutors(
-                        Executors.newSingleThreadExecutor(),
-                        Executors.newFixedThreadPool(3),
-                        new MainThreadExecutor()
-                        );
+                if(singleInstance == null) {
+                    // arguments order : diskIO, mainThread, networkIO
+                    singleInstance = new AppExecutors(
+                            Executors.newSingleThreadExecutor(),
+                            new MainThreadExecutor(),
+                            Executors.newFixedThreadPool(3)
+                            );
+                }
             }
         }
         return singleInstance;
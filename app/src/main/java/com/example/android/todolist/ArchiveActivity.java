@@ -0,0 +1,138 @@
+package com.example.android.todolist;
+
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModelProviders;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.example.android.todolist.database.ArchivedTaskEntry;
+
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+
+import static android.support.v7.widget.DividerItemDecoration.VERTICAL;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Read only browser of the archived tasks : queries the cold table on demand,
+ * a page more each time the end of the list is reached
+ * -------------------------------------------------------------------------------------------------
+ */
+public class ArchiveActivity extends AppCompatActivity {
+
+    // Date format
+    private static final String DATE_FORMAT = "dd/MM/yyy";
+
+    private ArchiveAdapter mAdapter;
+    private ArchiveViewModel mViewModel;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_archive);
+
+        ActionBar actionBar = this.getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        RecyclerView recyclerView = findViewById(R.id.recyclerViewArchive);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        mAdapter = new ArchiveAdapter();
+        recyclerView.setAdapter(mAdapter);
+        recyclerView.addItemDecoration(new DividerItemDecoration(getApplicationContext(), VERTICAL));
+
+        mViewModel = ViewModelProviders.of(this).get(ArchiveViewModel.class);
+        mViewModel.getTasks().observe(this, new Observer<List<ArchivedTaskEntry>>() {
+            @Override
+            public void onChanged(@Nullable List<ArchivedTaskEntry> tasks) {
+                mAdapter.setTasks(tasks);
+            }
+        });
+
+        // next page when the last row shows up
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - 1) {
+                    mViewModel.loadMore(mAdapter.getItemCount());
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            onBackPressed();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Adapter for the archived rows : description, completion date and priority
+     * ---------------------------------------------------------------------------------------------
+     */
+    private class ArchiveAdapter extends RecyclerView.Adapter<ArchiveAdapter.ArchiveRowHolder> {
+
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
+        private List<ArchivedTaskEntry> mTasks;
+
+        @Override
+        public ArchiveRowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(ArchiveActivity.this)
+                    .inflate(R.layout.task_layout, parent, false);
+            return new ArchiveRowHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(ArchiveRowHolder holder, int position) {
+            ArchivedTaskEntry task = mTasks.get(position);
+            holder.descriptionView.setText(task.getDescription());
+            holder.dateView.setText(dateFormat.format(task.getCompletedAt()));
+            holder.priorityView.setText(Integer.toString(task.getPriority()));
+            ((GradientDrawable) holder.priorityView.getBackground().mutate()).setColor(
+                    ContextCompat.getColor(ArchiveActivity.this, R.color.colorPrimaryLight));
+        }
+
+        @Override
+        public int getItemCount() {
+            return mTasks == null ? 0 : mTasks.size();
+        }
+
+        void setTasks(List<ArchivedTaskEntry> tasks) {
+            mTasks = tasks;
+            notifyDataSetChanged();
+        }
+
+        class ArchiveRowHolder extends RecyclerView.ViewHolder {
+            TextView descriptionView;
+            TextView dateView;
+            TextView priorityView;
+
+            ArchiveRowHolder(View itemView) {
+                super(itemView);
+                descriptionView = itemView.findViewById(R.id.taskDescription);
+                dateView        = itemView.findViewById(R.id.taskUpdatedAt);
+                priorityView    = itemView.findViewById(R.id.priorityTextView);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.android.todolist;
+
+import android.app.Application;
+import android.arch.core.util.Function;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Transformations;
+import android.support.annotation.NonNull;
+
+import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.ArchivedTaskEntry;
+
+import java.util.List;
+
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * ViewModel Class for browsing the archived tasks : loaded on demand, a page at a time
+ * -------------------------------------------------------------------------------------------------
+ */
+public class ArchiveViewModel extends AndroidViewModel {
+
+    // archived tasks added at each loadMore()
+    private static final int PAGE_SIZE = 100;
+
+    private final MutableLiveData<Integer> limit = new MutableLiveData<>();
+    private final LiveData<List<ArchivedTaskEntry>> tasks;
+
+    public ArchiveViewModel(@NonNull Application application) {
+        super(application);
+        final AppDatabase db = AppDatabase.getsInstance(this.getApplication());
+        // re-query the cold table only when more rows are requested
+        tasks = Transformations.switchMap(limit, new Function<Integer, LiveData<List<ArchivedTaskEntry>>>() {
+            @Override
+            public LiveData<List<ArchivedTaskEntry>> apply(Integer input) {
+                return db.archiveDao().loadArchivedTasks(input);
+            }
+        });
+        limit.setValue(PAGE_SIZE);
+    }
+
+    public LiveData<List<ArchivedTaskEntry>> getTasks() {
+        return tasks;
+    }
+
+    // extend the window when the list end is reached
+    public void loadMore(int loadedCount) {
+        Integer current = limit.getValue();
+        if (current != null && loadedCount >= current) {
+            limit.setValue(current + PAGE_SIZE);
+        }
+    }
+}
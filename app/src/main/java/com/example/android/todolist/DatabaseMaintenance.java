@@ -0,0 +1,281 @@
+package com.example.android.todolist;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.util.Log;
+
+import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.TaskRepository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Idle-time upkeep of the sqlite file, at most once per MAINTENANCE_PERIOD :
+ * - PRAGMA quick_check, logged as an error if the file is damaged
+ * - planner statistics : PRAGMA optimize, ANALYZE before Android O (sqlite < 3.18)
+ * - task_counter rows checked against a count of the tasks, see TaskRepository.reconcileCounters()
+ * - free pages given back VACUUM_CHUNK_PAGES at a time with incremental auto_vacuum
+ *   (switching the file to it needs one full VACUUM, which can't stop at the budget :
+ *   only done while charging with the screen off, skipped otherwise)
+ * Starts IDLE_DELAY_MS after the app went to background and stops when it comes back.
+ * Each step is a separate diskIO() task, so the DAO work queued meanwhile runs first,
+ * and no step starts once TIME_BUDGET_MS is spent : the next run goes on from there.
+ * -------------------------------------------------------------------------------------------------
+ */
+public class DatabaseMaintenance {
+
+    private static final String TAG = DatabaseMaintenance.class.getSimpleName();
+
+    // min time between two complete runs
+    private static final long MAINTENANCE_PERIOD = TimeUnit.DAYS.toMillis(1);
+    // quiet time in background before starting
+    private static final long IDLE_DELAY_MS = 5000;
+    // wall time of a run, waits behind other disk work included
+    private static final long TIME_BUDGET_MS = 3000;
+    // pages freed per incremental vacuum step
+    private static final int VACUUM_CHUNK_PAGES = 64;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private static final String PREFS_NAME = "maintenance";
+    private static final String PREF_LAST_MAINTENANCE = "last_db_maintenance";
+
+    // steps of a run, in order
+    private static final int STEP_QUICK_CHECK = 0;
+    private static final int STEP_OPTIMIZE    = 1;
+    private static final int STEP_COUNTERS    = 2;
+    private static final int STEP_VACUUM      = 3;
+    private static final int STEP_DONE        = 4;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    // run in progress, only touched on the main thread
+    private static Run sRun;
+
+    private DatabaseMaintenance() {
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * The app went to background : start a run after IDLE_DELAY_MS if the last one is old enough
+     * ---------------------------------------------------------------------------------------------
+     */
+    @MainThread
+    public static void scheduleIfDue(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (sRun != null
+                || System.currentTimeMillis() - prefs.getLong(PREF_LAST_MAINTENANCE, 0) < MAINTENANCE_PERIOD) {
+            return;
+        }
+        sRun = new Run(context.getApplicationContext());
+        sHandler.postDelayed(sRun.start, IDLE_DELAY_MS);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * The app is in foreground again : no new step is started, the current one ends
+     * ---------------------------------------------------------------------------------------------
+     */
+    @MainThread
+    public static void cancel() {
+        if (sRun != null) {
+            sHandler.removeCallbacks(sRun.start);
+            sRun.cancelled = true;
+            sRun = null;
+        }
+    }
+
+    // page figures of the file
+    private static class Stats {
+        long fileBytes;
+        long pageCount;
+        long freePages;
+
+        @Override
+        public String toString() {
+            return fileBytes + " bytes, " + pageCount + " pages, " + freePages + " free";
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * One run, a step per diskIO() task
+     * ---------------------------------------------------------------------------------------------
+     */
+    private static class Run implements Runnable {
+        final Context context;
+        volatile boolean cancelled = false;
+        int step = STEP_QUICK_CHECK;
+        long startedAt;
+        Stats before;
+        SupportSQLiteDatabase database;
+
+        final Runnable start = new Runnable() {
+            @Override
+            public void run() {
+                startedAt = SystemClock.elapsedRealtime();
+                AppExecutors.getInstance().diskIO().execute(Run.this);
+            }
+        };
+
+        Run(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public void run() {
+            if (before == null) {
+                database = AppDatabase.getsInstance(context).getOpenHelper().getWritableDatabase();
+                before = readStats();
+            }
+            if (cancelled || SystemClock.elapsedRealtime() - startedAt > TIME_BUDGET_MS) {
+                finish();
+                return;
+            }
+
+            switch (step) {
+                case STEP_QUICK_CHECK:
+                    quickCheck();
+                    step = STEP_OPTIMIZE;
+                    break;
+                case STEP_OPTIMIZE:
+                    optimize();
+                    step = STEP_COUNTERS;
+                    break;
+                case STEP_COUNTERS:
+                    TaskRepository.getInstance(context).reconcileCounters();
+                    step = STEP_VACUUM;
+                    break;
+                case STEP_VACUUM:
+                    // stay on this step while free pages remain
+                    if (vacuumChunk()) {
+                        step = STEP_DONE;
+                    }
+                    break;
+            }
+
+            if (step == STEP_DONE) {
+                finish();
+            } else {
+                // back of the queue : waiting DAO work goes first
+                AppExecutors.getInstance().diskIO().execute(this);
+            }
+        }
+
+        private void quickCheck() {
+            Cursor cursor = database.query("PRAGMA quick_check");
+            try {
+                while (cursor.moveToNext()) {
+                    String result = cursor.getString(0);
+                    if (!"ok".equals(result)) {
+                        Log.e(TAG, "quick_check : " + result);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        private void optimize() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                drain(database.query("PRAGMA optimize"));
+            } else {
+                database.execSQL("ANALYZE");
+            }
+        }
+
+        // @return true when no free page is left, or nothing more to do on this run
+        private boolean vacuumChunk() {
+            if (pragmaLong("auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                // the mode only applies to the file after a full VACUUM : done once, when it can't be felt
+                if (isChargingAndIdle()) {
+                    database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                    database.execSQL("VACUUM");
+                } else {
+                    Log.d(TAG, "Switch to incremental vacuum put off until charging and idle");
+                }
+                return true;
+            }
+            drain(database.query("PRAGMA incremental_vacuum(" + VACUUM_CHUNK_PAGES + ")"));
+            return pragmaLong("freelist_count") == 0;
+        }
+
+        private void finish() {
+            Stats after = readStats();
+            long elapsed = SystemClock.elapsedRealtime() - startedAt;
+            if (step == STEP_DONE) {
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                        .putLong(PREF_LAST_MAINTENANCE, System.currentTimeMillis()).apply();
+                Log.d(TAG, "Maintenance done in " + elapsed + " ms : " + before + " -> " + after);
+            } else {
+                Log.d(TAG, "Maintenance stopped at step " + step + " after " + elapsed + " ms : "
+                        + before + " -> " + after);
+            }
+
+            final Run run = this;
+            AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (sRun == run) {
+                        sRun = null;
+                    }
+                }
+            });
+        }
+
+        // plugged in with the screen off
+        @SuppressWarnings("deprecation")
+        private boolean isChargingAndIdle() {
+            // sticky broadcast : no receiver needed
+            Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+            if (battery == null || battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) == 0) {
+                return false;
+            }
+            PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (power == null) {
+                return false;
+            }
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH
+                    ? !power.isInteractive() : !power.isScreenOn();
+        }
+
+        private Stats readStats() {
+            Stats stats = new Stats();
+            stats.fileBytes = context.getDatabasePath(AppDatabase.DATABASE_NAME).length();
+            stats.pageCount = pragmaLong("page_count");
+            stats.freePages = pragmaLong("freelist_count");
+            return stats;
+        }
+
+        private long pragmaLong(String pragma) {
+            Cursor cursor = database.query("PRAGMA " + pragma);
+            try {
+                return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        // a pragma runs as its rows are stepped
+        private void drain(Cursor cursor) {
+            try {
+                while (cursor.moveToNext()) {
+                    // nothing to read
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
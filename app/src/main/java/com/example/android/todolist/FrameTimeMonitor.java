@@ -0,0 +1,98 @@
+package com.example.android.todolist;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Frame times of a RecyclerView while it scrolls, for debug builds and TaskListScrollTest :
+ * every scroll, from drag or fling to rest, logs the frame count, median, 90th percentile
+ * and max frame time, and the frames over 1.5 vsync (dropped frames)
+ * -------------------------------------------------------------------------------------------------
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class FrameTimeMonitor extends RecyclerView.OnScrollListener implements Choreographer.FrameCallback {
+
+    private static final String TAG = FrameTimeMonitor.class.getSimpleName();
+
+    private static final long VSYNC_NS = 16666667L;
+    private static final long JANK_NS = VSYNC_NS * 3 / 2;
+    // frames kept per scroll, the longer scrolls are cut
+    private static final int MAX_FRAMES = 1200;
+
+    private final String mName;
+    private final long[] mFrameNs = new long[MAX_FRAMES];
+    private int mFrames = 0;
+    private long mLastFrameAt = 0;
+    private boolean mRunning = false;
+    // figures of the last scroll
+    private int mLastFrames = 0;
+    private int mLastJankyFrames = 0;
+
+    public FrameTimeMonitor(String name) {
+        mName = name;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState != RecyclerView.SCROLL_STATE_IDLE && !mRunning) {
+            mRunning = true;
+            mFrames = 0;
+            mLastFrameAt = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else if (newState == RecyclerView.SCROLL_STATE_IDLE && mRunning) {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+            report();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameAt != 0 && mFrames < MAX_FRAMES) {
+            mFrameNs[mFrames++] = frameTimeNanos - mLastFrameAt;
+        }
+        mLastFrameAt = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    int getLastFrames() {
+        return mLastFrames;
+    }
+
+    int getLastJankyFrames() {
+        return mLastJankyFrames;
+    }
+
+    private void report() {
+        mLastFrames = mFrames;
+        mLastJankyFrames = 0;
+        if (mFrames == 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(mFrameNs, mFrames);
+        Arrays.sort(sorted);
+        int janky = 0;
+        for (long frameNs : sorted) {
+            if (frameNs > JANK_NS) {
+                janky++;
+            }
+        }
+        mLastJankyFrames = janky;
+        Log.d(TAG, mName + " scroll : " + mFrames + " frames, median " + toMs(sorted[mFrames / 2])
+                + " ms, p90 " + toMs(sorted[mFrames * 9 / 10]) + " ms, max " + toMs(sorted[mFrames - 1])
+                + " ms, " + janky + " janky");
+    }
+
+    private static String toMs(long ns) {
+        return String.valueOf(ns / 100000 / 10.0);
+    }
+}
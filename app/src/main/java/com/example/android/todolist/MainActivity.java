@@ -19,11 +19,20 @@ package com.example.android.todolist;
 import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.Observer;
 import android.arch.lifecycle.ViewModelProviders;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.preference.PreferenceManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.view.ActionMode;
 import android.support.v7.widget.DividerItemDecoration;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -32,10 +41,19 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
 
 import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.CacheRegistry;
+import com.example.android.todolist.database.TagEntry;
+import com.example.android.todolist.database.TaskBitmap;
 import com.example.android.todolist.database.TaskEntry;
+import com.example.android.todolist.database.TaskRepository;
+import com.example.android.todolist.database.TaskSummary;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static android.support.v7.widget.DividerItemDecoration.VERTICAL;
@@ -53,9 +71,39 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.ItemC
     // RecyclerView stuff
     private RecyclerView mRecyclerView;
     private TaskAdapter  mAdapter;
+    private ItemTouchHelper mItemTouchHelper;
+    private RowPrewarmer mRowPrewarmer;
+    private TextView mSummaryTextView;
+
+    // bound rows kept off screen, default 2
+    private static final int ITEM_VIEW_CACHE_SIZE = 4;
+
+    // contextual action bar shown while tasks are selected, null otherwise
+    private ActionMode mActionMode;
+
+    // selected task ids kept across rotation
+    private static final String INSTANCE_SELECTED_IDS = "instanceSelectedIds";
+
+    // tag filter kept across rotation
+    private static final String INSTANCE_FILTER_TAG_IDS = "instanceFilterTagIds";
+    private static final String INSTANCE_FILTER_MATCH_ALL = "instanceFilterMatchAll";
+
+    // tasks from LiveData before the tag filter, and the filter : no tag ids means no filter
+    private List<TaskEntry> mAllTasks;
+    private List<TagEntry> mTags = Collections.emptyList();
+    private int[] mFilterTagIds = new int[0];
+    private boolean mFilterMatchAll = false;
 
     private AppDatabase mDb;
 
+    // a new day or a clock change moves the "updated today" count of the header
+    private final BroadcastReceiver mDayReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            ViewModelProviders.of(MainActivity.this).get(MainViewModel.class).refreshDay();
+        }
+    };
+
     /**
      * ---------------------------------------------------------------------------------------------
      * onCreate
@@ -72,44 +120,112 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.ItemC
 
         // Set the RecyclerView's view
         mRecyclerView = findViewById(R.id.recyclerViewTasks);
+        mSummaryTextView = findViewById(R.id.summaryTextView);
 
         // Set LinearLayout
         mRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        // the list size doesn't depend on its rows; a few more rows kept bound around the screen.
+        // Item prefetch of LinearLayoutManager is on : it draws from the pool the prewarmer fills
+        mRecyclerView.setHasFixedSize(true);
+        mRecyclerView.setItemViewCacheSize(ITEM_VIEW_CACHE_SIZE);
 
         // Initialize the adapter and attach it to the RecyclerView
         mAdapter = new TaskAdapter(this, this);
         mRecyclerView.setAdapter(mAdapter);
+        mRowPrewarmer = new RowPrewarmer(mRecyclerView, mAdapter);
+        mRowPrewarmer.start();
+        if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mRecyclerView.addOnScrollListener(new FrameTimeMonitor("task list"));
+        }
+        CacheRegistry.getInstance().register("subtasks", CacheRegistry.PRIORITY_LOW, mAdapter);
 
         DividerItemDecoration decoration = new DividerItemDecoration(getApplicationContext(), VERTICAL);
         mRecyclerView.addItemDecoration(decoration);
 
 
         // -----------------------------------------------------------------------------------------
-        // Swipe for delete task; using ItemTouchHelper on RecyclerView
+        // Swipe for delete task, drag by the priority circle to reorder inside a priority;
+        // using ItemTouchHelper on RecyclerView (long press is used for multi-select)
         // * ItemTouchHelper : enables touch behaviour on ViewHolder and callback to perform it
         // -----------------------------------------------------------------------------------------
-        new ItemTouchHelper(new ItemTouchHelper.SimpleCallback(0, ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT) {
+        mItemTouchHelper = new ItemTouchHelper(new ItemTouchHelper.SimpleCallback(ItemTouchHelper.UP | ItemTouchHelper.DOWN,
+                ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT) {
+
+            // true when the dragged item changed position
+            private boolean mMoved = false;
+
+            // drag is started from the handle, see onStartDrag()
             @Override
-            public boolean onMove(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder, RecyclerView.ViewHolder target) {
+            public boolean isLongPressDragEnabled() {
                 return false;
             }
 
+            // no swipe while selecting tasks
+            @Override
+            public int getSwipeDirs(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
+                return mAdapter.isSelectionMode() ? 0 : super.getSwipeDirs(recyclerView, viewHolder);
+            }
+
+            // move the item in the adapter only : db is written once, on drop
+            @Override
+            public boolean onMove(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder, RecyclerView.ViewHolder target) {
+                int from = viewHolder.getAdapterPosition();
+                int to   = target.getAdapterPosition();
+                // manual order is only inside the same priority, among siblings
+                if (!mAdapter.canMoveItem(from, to)) {
+                    return false;
+                }
+                mAdapter.moveItem(from, to);
+                mMoved = true;
+                return true;
+            }
+
+            // drag finished : persist the new rank of the dropped task only
+            @Override
+            public void clearView(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
+                super.clearView(recyclerView, viewHolder);
+                int position = viewHolder.getAdapterPosition();
+                if (!mMoved || position == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                mMoved = false;
+
+                // the rows next to it may belong to an expanded subtree : take the siblings
+                final TaskEntry moved  = mAdapter.getTaskAtPosition(position);
+                final TaskEntry before = mAdapter.findSibling(position, -1);
+                final TaskEntry after  = mAdapter.findSibling(position, 1);
+                AppExecutors.getInstance().diskIO().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        TaskRepository.getInstance(getApplicationContext()).moveTask(moved, before, after);
+                    }
+                });
+            }
+
             // Called when a user swipes left or right on a ViewHolder
             @Override
             public void onSwiped(final  RecyclerView.ViewHolder viewHolder, int swipeDir) {
-                // delete item in db
+                // soft delete item in db : tombstone, hidden from the list, can be undone
+                final TaskEntry taskToDelete = mAdapter.getTaskAtPosition(viewHolder.getAdapterPosition());
                 AppExecutors.getInstance().diskIO().execute(new Runnable() {
                     @Override
                     public void run() {
-                        TaskEntry taskToDelete = mAdapter.getTaskAtPosition(viewHolder.getAdapterPosition());
-                        mDb.taskDao().deleteTask(taskToDelete);
+                        int[] deletedIds = TaskRepository.getInstance(getApplicationContext())
+                                .deleteTask(taskToDelete.getId());
+                        // the subtasks are deleted with it : none of them is reminded
+                        ReminderScheduler scheduler = ReminderScheduler.getInstance(getApplicationContext());
+                        for (int id : deletedIds) {
+                            scheduler.onTaskRemoved(id);
+                        }
                         // DON'T NEED to update tasks list view because we use LiveData
                     }
                 });
 
+                showUndoDelete(taskToDelete);
 
             }
-        }).attachToRecyclerView(mRecyclerView);
+        });
+        mItemTouchHelper.attachToRecyclerView(mRecyclerView);
 
         // ---------------------
         // FAB for new task
@@ -126,10 +242,86 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.ItemC
 
 
 
+        // restore the tag filter before the first list is received
+        if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCE_FILTER_TAG_IDS)) {
+            mFilterTagIds = savedInstanceState.getIntArray(INSTANCE_FILTER_TAG_IDS);
+            mFilterMatchAll = savedInstanceState.getBoolean(INSTANCE_FILTER_MATCH_ALL);
+        }
+
         // Using ViewModel/LiveData to show/keep update list
         // ---------------------------------------------------
         // active LiveData and register this activity as observer
         setupViewModel();
+
+        // restore the selection after rotation
+        if (savedInstanceState != null && savedInstanceState.containsKey(INSTANCE_SELECTED_IDS)) {
+            mAdapter.setSelectedIds(savedInstanceState.getIntArray(INSTANCE_SELECTED_IDS));
+            onSelectionChanged(mAdapter.getSelectedIds().length);
+        }
+
+        // arm the reminder alarm on the next due task, build the tag index,
+        // purge old deleted tasks, move old completed tasks to the archive
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                ReminderScheduler.getInstance(getApplicationContext()).rebuild();
+                TaskRepository.getInstance(getApplicationContext()).loadTagIndex();
+                if (mFilterTagIds.length > 0) {
+                    AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            applyTagFilter();
+                        }
+                    });
+                }
+                TombstoneCompactor.compactIfDue(getApplicationContext());
+                TaskArchiver.archiveIfDue(getApplicationContext());
+            }
+        });
+    }
+
+    // tag links are not watched by the task list LiveData : match again on return from an edit
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mFilterTagIds.length > 0) {
+            applyTagFilter();
+        }
+        ViewModelProviders.of(this).get(MainViewModel.class).refreshDay();
+        IntentFilter dayFilter = new IntentFilter(Intent.ACTION_DATE_CHANGED);
+        dayFilter.addAction(Intent.ACTION_TIME_CHANGED);
+        dayFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        registerReceiver(mDayReceiver, dayFilter);
+    }
+
+    @Override
+    protected void onPause() {
+        unregisterReceiver(mDayReceiver);
+        super.onPause();
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Undo for swipe delete : restore clears the tombstones of the task and its subtasks
+     * @param task the deleted task
+     * ---------------------------------------------------------------------------------------------
+     */
+    private void showUndoDelete(final TaskEntry task) {
+        Snackbar.make(mRecyclerView, R.string.task_deleted, Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                TaskRepository.getInstance(getApplicationContext()).restoreTask(task.getId());
+                                // the subtasks come back too, with their own due dates : reload the queue
+                                ReminderScheduler.getInstance(getApplicationContext()).rebuild();
+                            }
+                        });
+                    }
+                })
+                .show();
     }
 
 
@@ -150,6 +342,175 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.ItemC
 
 
 
+    @Override
+    protected void onDestroy() {
+        mRowPrewarmer.stop();
+        CacheRegistry.getInstance().unregister(mAdapter);
+        super.onDestroy();
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * save the selection in case of rotations
+     * @param outState
+     * ---------------------------------------------------------------------------------------------
+     */
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        if (mAdapter.isSelectionMode()) {
+            outState.putIntArray(INSTANCE_SELECTED_IDS, mAdapter.getSelectedIds());
+        }
+        outState.putIntArray(INSTANCE_FILTER_TAG_IDS, mFilterTagIds);
+        outState.putBoolean(INSTANCE_FILTER_MATCH_ALL, mFilterMatchAll);
+        super.onSaveInstanceState(outState);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Drag handle touched : start dragging the row
+     * ---------------------------------------------------------------------------------------------
+     */
+    @Override
+    public void onStartDrag(RecyclerView.ViewHolder viewHolder) {
+        mItemTouchHelper.startDrag(viewHolder);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * A task has been expanded : its direct subtasks in one indexed query on task_closure
+     * ---------------------------------------------------------------------------------------------
+     */
+    @Override
+    public void onLoadChildren(final int parentId) {
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<TaskEntry> children =
+                        TaskRepository.getInstance(getApplicationContext()).loadChildren(parentId);
+                AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mAdapter.setChildren(parentId, children);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Multi-select : show/update/close the contextual action bar
+     * @param selectedCount number of selected tasks, 0 when the selection mode ends
+     * ---------------------------------------------------------------------------------------------
+     */
+    @Override
+    public void onSelectionChanged(int selectedCount) {
+        if (selectedCount == 0) {
+            if (mActionMode != null) {
+                mActionMode.finish();
+            }
+            return;
+        }
+        if (mActionMode == null) {
+            mActionMode = startSupportActionMode(mActionModeCallback);
+        }
+        if (mActionMode != null) {
+            mActionMode.setTitle(getString(R.string.selected_count, selectedCount));
+            // add subtask needs a single parent
+            mActionMode.invalidate();
+        }
+    }
+
+    // bulk actions on the selected tasks
+    private final ActionMode.Callback mActionModeCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.task_selection_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            menu.findItem(R.id.action_add_subtask).setVisible(mAdapter.getSelectedIds().length == 1);
+            return true;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            switch (item.getItemId()) {
+                case R.id.action_add_subtask:
+                    Intent addSubtaskIntent = new Intent(MainActivity.this, AddTaskActivity.class);
+                    addSubtaskIntent.putExtra(AddTaskActivity.EXTRA_PARENT_ID, mAdapter.getSelectedIds()[0]);
+                    startActivity(addSubtaskIntent);
+                    break;
+                case R.id.action_delete_selected:
+                    runBulkAction(BULK_DELETE, 0);
+                    break;
+                case R.id.action_complete_selected:
+                    runBulkAction(BULK_COMPLETE, 0);
+                    break;
+                case R.id.action_priority_high:
+                    runBulkAction(BULK_PRIORITY, AddTaskActivity.PRIORITY_HIGH);
+                    break;
+                case R.id.action_priority_medium:
+                    runBulkAction(BULK_PRIORITY, AddTaskActivity.PRIORITY_MEDIUM);
+                    break;
+                case R.id.action_priority_low:
+                    runBulkAction(BULK_PRIORITY, AddTaskActivity.PRIORITY_LOW);
+                    break;
+                default:
+                    // submenu opening
+                    return false;
+            }
+            mode.finish();
+            return true;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            mActionMode = null;
+            mAdapter.clearSelection();
+        }
+    };
+
+    // Constants for the bulk actions
+    private static final int BULK_DELETE   = 0;
+    private static final int BULK_COMPLETE = 1;
+    private static final int BULK_PRIORITY = 2;
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Run a bulk action on the selected ids : one transaction, so one list refresh
+     * @param action   one of BULK_*
+     * @param priority the new priority for BULK_PRIORITY
+     * ---------------------------------------------------------------------------------------------
+     */
+    private void runBulkAction(final int action, final int priority) {
+        final int[] ids = mAdapter.getSelectedIds();
+        if (ids.length == 0) {
+            return;
+        }
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+                switch (action) {
+                    case BULK_DELETE:
+                        repository.deleteTasks(ids);
+                        break;
+                    case BULK_COMPLETE:
+                        repository.completeTasks(ids);
+                        break;
+                    case BULK_PRIORITY:
+                        repository.setPriority(ids, priority);
+                        return;
+                }
+                // deleted/completed tasks may hold the next reminder
+                ReminderScheduler.getInstance(getApplicationContext()).rebuild();
+            }
+        });
+    }
+
     /**
      * ---------------------------------------------------------------------------------------------
      * Used to reload from db the tasks list and update the list view in screen
@@ -171,7 +532,157 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.ItemC
             public void onChanged(@Nullable List<TaskEntry> taskEntries) {
                 Log.d(TAG, "Received data from db via LiveData");
                 // Update tasklist through adapter
-                mAdapter.setTasks(taskEntries);
+                mAllTasks = taskEntries;
+                applyTagFilter();
+            }
+        });
+
+        viewModel.getTags().observe(this, new Observer<List<TagEntry>>() {
+            @Override
+            public void onChanged(@Nullable List<TagEntry> tagEntries) {
+                mTags = tagEntries == null ? Collections.<TagEntry>emptyList() : tagEntries;
+            }
+        });
+
+        // header counts : a few counter rows, not a pass over the task list
+        viewModel.getSummary().observe(this, new Observer<TaskSummary>() {
+            @Override
+            public void onChanged(@Nullable TaskSummary summary) {
+                if (summary == null) {
+                    return;
+                }
+                mSummaryTextView.setText(getString(R.string.summary_header, summary.getTotal(),
+                        summary.getCount(AddTaskActivity.PRIORITY_HIGH),
+                        summary.getCount(AddTaskActivity.PRIORITY_MEDIUM),
+                        summary.getCount(AddTaskActivity.PRIORITY_LOW),
+                        summary.getUpdatedToday()));
+            }
+        });
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Show the tasks matching the tag filter : the match is a bitmap AND/OR in memory,
+     * then a lookup per task, no query is run
+     * ---------------------------------------------------------------------------------------------
+     */
+    private void applyTagFilter() {
+        if (mAllTasks == null || mFilterTagIds.length == 0) {
+            mAdapter.setTasks(mAllTasks);
+            return;
+        }
+
+        final TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+        if (!repository.getTagIndex().isLoaded()) {
+            // dropped on memory pressure : reload, then filter
+            AppExecutors.getInstance().diskIO().execute(new Runnable() {
+                @Override
+                public void run() {
+                    repository.loadTagIndex();
+                    AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            applyTagFilter();
+                        }
+                    });
+                }
+            });
+            return;
+        }
+        TaskBitmap matching = repository.getTagIndex().match(mFilterTagIds, mFilterMatchAll);
+        List<TaskEntry> filtered = new ArrayList<>(Math.min(matching.cardinality(), mAllTasks.size()));
+        for (TaskEntry task : mAllTasks) {
+            if (matching.contains(task.getId())) {
+                filtered.add(task);
+            }
+        }
+        mAdapter.setTasks(filtered);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Pick the filter tags, matching any or all of them
+     * ---------------------------------------------------------------------------------------------
+     */
+    private void showTagFilter() {
+        if (mTags.isEmpty()) {
+            Toast.makeText(this, R.string.no_tags, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final CharSequence[] names = new CharSequence[mTags.size()];
+        final boolean[] checked = new boolean[mTags.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = mTags.get(i).getName();
+            for (int tagId : mFilterTagIds) {
+                checked[i] |= tagId == mTags.get(i).getId();
+            }
+        }
+        final List<TagEntry> tags = mTags;
+
+        DialogInterface.OnClickListener onApply = new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                List<Integer> tagIds = new ArrayList<>();
+                for (int i = 0; i < checked.length; i++) {
+                    if (checked[i]) {
+                        tagIds.add(tags.get(i).getId());
+                    }
+                }
+                mFilterTagIds = new int[tagIds.size()];
+                for (int i = 0; i < mFilterTagIds.length; i++) {
+                    mFilterTagIds[i] = tagIds.get(i);
+                }
+                mFilterMatchAll = which == DialogInterface.BUTTON_NEUTRAL;
+                applyTagFilter();
+            }
+        };
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.filter_tags_title)
+                .setMultiChoiceItems(names, checked, new DialogInterface.OnMultiChoiceClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                        checked[which] = isChecked;
+                    }
+                })
+                .setPositiveButton(R.string.filter_match_any, onApply)
+                .setNeutralButton(R.string.filter_match_all, onApply)
+                .setNegativeButton(R.string.filter_clear, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        mFilterTagIds = new int[0];
+                        applyTagFilter();
+                    }
+                })
+                .show();
+    }
+
+
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Delta sync with the server set in preferences, the list is refreshed by LiveData
+     * ---------------------------------------------------------------------------------------------
+     */
+    private void startSync() {
+        String serverUrl = PreferenceManager.getDefaultSharedPreferences(this)
+                .getString(getString(R.string.settings_sync_url_key), "").trim();
+        if (serverUrl.isEmpty()) {
+            Toast.makeText(this, R.string.sync_not_configured, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final Context appContext = getApplicationContext();
+        SyncEngine.getInstance(appContext).syncAsync(serverUrl, new SyncEngine.SyncCallback() {
+            @Override
+            public void onSyncFinished(SyncEngine.SyncResult result, Exception error) {
+                if (error != null) {
+                    Toast.makeText(appContext, R.string.sync_failed, Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(appContext, appContext.getString(R.string.sync_done,
+                            result.pushed, result.pulled), Toast.LENGTH_SHORT).show();
+                }
             }
         });
     }
@@ -196,6 +707,22 @@ public class MainActivity extends AppCompatActivity implements TaskAdapter.ItemC
             startActivity(settingsIntent);
             return true;
         }
+        if (id == R.id.action_upcoming) {
+            startActivity(new Intent(this, UpcomingActivity.class));
+            return true;
+        }
+        if (id == R.id.action_filter_tags) {
+            showTagFilter();
+            return true;
+        }
+        if (id == R.id.action_archive) {
+            startActivity(new Intent(this, ArchiveActivity.class));
+            return true;
+        }
+        if (id == R.id.action_sync) {
+            startSync();
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
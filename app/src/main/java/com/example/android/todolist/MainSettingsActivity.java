@@ -51,6 +51,12 @@ public class MainSettingsActivity extends AppCompatActivity {
 
             Preference orderBy = findPreference(getString(R.string.settings_order_by_key));
             bindPreferenceSummaryToValue(orderBy);
+
+            Preference archiveAge = findPreference(getString(R.string.settings_archive_age_key));
+            bindPreferenceSummaryToValue(archiveAge);
+
+            Preference syncUrl = findPreference(getString(R.string.settings_sync_url_key));
+            bindPreferenceSummaryToValue(syncUrl);
         }
 
 
@@ -2,12 +2,18 @@ package com.example.android.todolist;
 
 import android.app.Application;
 import android.arch.lifecycle.AndroidViewModel;
+import android.arch.core.util.Function;
 import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Transformations;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.TagEntry;
+import com.example.android.todolist.database.TaskCounter;
 import com.example.android.todolist.database.TaskEntry;
+import com.example.android.todolist.database.TaskSummary;
 
 import java.util.List;
 
@@ -21,12 +27,34 @@ public class MainViewModel extends AndroidViewModel {
 
     private final static String TAG = MainViewModel.class.getSimpleName();
     private LiveData<List<TaskEntry>> tasks;
+    // tags offered by the filter
+    private LiveData<List<TagEntry>> tags;
+    // list header, from the task_counter rows : no scan of task
+    private LiveData<TaskSummary> summary;
+    // counter of the current day, the header query is redone when it changes
+    private final MutableLiveData<String> today = new MutableLiveData<>();
 
     public MainViewModel(@NonNull Application application) {
         super(application);
-        AppDatabase db = AppDatabase.getsInstance(this.getApplication());
+        final AppDatabase db = AppDatabase.getsInstance(this.getApplication());
         Log.d(TAG, "Retrieving the tasks from db in vViewModel");
         tasks = db.taskDao().loadAllTasks();
+        tags = db.tagDao().loadAllTags();
+        LiveData<List<TaskCounter>> counters = Transformations.switchMap(today,
+                new Function<String, LiveData<List<TaskCounter>>>() {
+                    @Override
+                    public LiveData<List<TaskCounter>> apply(String todayCounter) {
+                        return db.counterDao().loadHeaderCounters(todayCounter);
+                    }
+                });
+        summary = Transformations.map(counters,
+                new Function<List<TaskCounter>, TaskSummary>() {
+                    @Override
+                    public TaskSummary apply(List<TaskCounter> counters) {
+                        return new TaskSummary(counters);
+                    }
+                });
+        refreshDay();
 
 
 
@@ -36,6 +64,22 @@ public class MainViewModel extends AndroidViewModel {
         return tasks;
     }
 
+    public LiveData<List<TagEntry>> getTags() {
+        return tags;
+    }
+
+    public LiveData<TaskSummary> getSummary() {
+        return summary;
+    }
+
+    // after midnight, the header counts the tasks updated on the new day
+    public void refreshDay() {
+        String todayCounter = TaskCounter.dayCounter(System.currentTimeMillis());
+        if (!todayCounter.equals(today.getValue())) {
+            today.setValue(todayCounter);
+        }
+    }
+
 
 
 
@@ -0,0 +1,107 @@
+package com.example.android.todolist;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+
+import com.example.android.todolist.database.TaskEntry;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Receives the single reminder alarm (and boot completed, to re-arm it) and shows a
+ * notification for each task fallen due, up to ReminderScheduler.MAX_NOTIFIED,
+ * then one summary notification for the others
+ * -------------------------------------------------------------------------------------------------
+ */
+public class ReminderReceiver extends BroadcastReceiver {
+
+    private static final String CHANNEL_ID = "reminders";
+
+    // task notifications use the task id, from 1 up
+    private static final int SUMMARY_NOTIFICATION_ID = 0;
+
+    @Override
+    public void onReceive(Context context, final Intent intent) {
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pendingResult = goAsync();
+
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ReminderScheduler scheduler = ReminderScheduler.getInstance(appContext);
+                    if (ReminderScheduler.ACTION_REMINDER.equals(intent.getAction())) {
+                        showNotifications(appContext, scheduler.onAlarmFired());
+                    } else {
+                        // boot completed : alarms are lost, arm again
+                        scheduler.rebuild();
+                    }
+                } finally {
+                    pendingResult.finish();
+                }
+            }
+        });
+    }
+
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * One notification per loaded due task, tapping it opens the task in AddTaskActivity.
+     * The tasks left over share a summary notification opening the task list
+     * ---------------------------------------------------------------------------------------------
+     */
+    private void showNotifications(Context context, ReminderScheduler.DueReminders due) {
+        if (due.count == 0) {
+            return;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager =
+                    (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            if (manager != null) {
+                manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                        context.getString(R.string.reminder_channel_name),
+                        NotificationManager.IMPORTANCE_DEFAULT));
+            }
+        }
+
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+        for (TaskEntry task : due.tasks) {
+            Intent openIntent = new Intent(context, AddTaskActivity.class);
+            openIntent.putExtra(AddTaskActivity.EXTRA_TASK_ID, task.getId());
+            PendingIntent contentIntent = PendingIntent.getActivity(context, task.getId(),
+                    openIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setContentTitle(context.getString(R.string.reminder_title))
+                    .setContentText(task.getDescription())
+                    .setContentIntent(contentIntent)
+                    .setAutoCancel(true);
+
+            notificationManager.notify(task.getId(), builder.build());
+        }
+
+        int more = due.count - due.tasks.size();
+        if (more > 0) {
+            PendingIntent listIntent = PendingIntent.getActivity(context, SUMMARY_NOTIFICATION_ID,
+                    new Intent(context, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setContentTitle(context.getString(R.string.reminder_title))
+                    .setContentText(context.getResources().getQuantityString(R.plurals.reminder_more_due,
+                            more, more))
+                    .setContentIntent(listIntent)
+                    .setAutoCancel(true);
+
+            notificationManager.notify(SUMMARY_NOTIFICATION_ID, builder.build());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.android.todolist;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.example.android.todolist.database.AppDatabase;
+import com.example.android.todolist.database.TaskDao;
+import com.example.android.todolist.database.TaskEntry;
+import com.example.android.todolist.database.TaskReminder;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Reminder scheduler : keeps exactly one pending system alarm, armed for the next due task.
+ * The upcoming reminders are held in a small in-memory priority queue filled by an indexed
+ * range query on due_at (WINDOW_SIZE rows at most), so the cost does not grow with the number
+ * of tasks carrying a due date. Task edits/deletes update the queue incrementally.
+ * All the methods touch the db : call them from AppExecutors.diskIO()
+ * -------------------------------------------------------------------------------------------------
+ */
+public class ReminderScheduler {
+
+    private static final String TAG = ReminderScheduler.class.getSimpleName();
+
+    public static final String ACTION_REMINDER = "com.example.android.todolist.action.REMINDER";
+
+    // max reminders loaded in memory at the same time
+    private static final int WINDOW_SIZE = 32;
+
+    // tasks notified one by one when the alarm fires, the others get a single summary
+    public static final int MAX_NOTIFIED = 3;
+
+    // last time reminders have been notified, persisted across process restarts
+    private static final String PREFS_NAME = "reminders";
+    private static final String PREF_LAST_FIRED = "last_fired_at";
+
+    // singleton instantion
+    private static final Object LOCK = new Object();
+    private static ReminderScheduler sInstance;
+
+    private final Context mContext;
+
+    // upcoming reminders, head is the one the alarm is armed for
+    private final PriorityQueue<TaskReminder> mQueue = new PriorityQueue<>();
+    // the queue holds every reminder with due time <= mHorizon; Long.MAX_VALUE if it holds all
+    private long mHorizon;
+    private boolean mLoaded = false;
+    // due time of the currently armed alarm, -1 if none
+    private long mArmedAt = -1;
+
+    private ReminderScheduler(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static ReminderScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new ReminderScheduler(context);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Reload the queue window from db and re-arm the alarm
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public synchronized void rebuild() {
+        long now = System.currentTimeMillis();
+
+        // first run : older due dates must not be notified all at once
+        SharedPreferences prefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(PREF_LAST_FIRED)) {
+            prefs.edit().putLong(PREF_LAST_FIRED, now).apply();
+        }
+
+        List<TaskReminder> upcoming = AppDatabase.getsInstance(mContext).taskDao()
+                .loadRemindersAfter(now, WINDOW_SIZE);
+
+        mQueue.clear();
+        mQueue.addAll(upcoming);
+        // a full window could leave out later reminders : remember where it stops
+        mHorizon = upcoming.size() < WINDOW_SIZE
+                ? Long.MAX_VALUE
+                : upcoming.get(upcoming.size() - 1).dueAt;
+        mLoaded = true;
+
+        Log.d(TAG, "Reminder queue rebuilt with " + mQueue.size() + " entries");
+        armAlarm();
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * A task has been inserted or updated
+     * @param taskId id of the task
+     * @param dueAt  new due date, null if none
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public synchronized void onTaskSaved(int taskId, Date dueAt) {
+        if (!mLoaded) {
+            rebuild();
+            return;
+        }
+        removeFromQueue(taskId);
+
+        long now = System.currentTimeMillis();
+        if (dueAt != null && dueAt.getTime() > now && dueAt.getTime() <= mHorizon) {
+            mQueue.add(new TaskReminder(taskId, dueAt.getTime()));
+        }
+
+        // keep the window small : shrink it reloading from db
+        if (mQueue.size() > WINDOW_SIZE * 2) {
+            rebuild();
+            return;
+        }
+        refillIfDrained();
+        armAlarm();
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * A task has been deleted (or does not need a reminder any more)
+     * @param taskId id of the task
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public synchronized void onTaskRemoved(int taskId) {
+        if (!mLoaded) {
+            rebuild();
+            return;
+        }
+        removeFromQueue(taskId);
+        refillIfDrained();
+        armAlarm();
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Tasks fallen due when the alarm fired : the first MAX_NOTIFIED ones, and how many in all
+     * ---------------------------------------------------------------------------------------------
+     */
+    public static class DueReminders {
+        public final List<TaskEntry> tasks;
+        public final int count;
+
+        DueReminders(List<TaskEntry> tasks, int count) {
+            this.tasks = tasks;
+            this.count = count;
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * The alarm went off : return the tasks due since the last time and arm the next one.
+     * Works also when the process has been restarted by the alarm itself, or after a long
+     * time off (a whole backlog fallen due) : only MAX_NOTIFIED tasks are loaded
+     * @return tasks to be notified
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public synchronized DueReminders onAlarmFired() {
+        SharedPreferences prefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        long lastFired = prefs.getLong(PREF_LAST_FIRED, 0);
+
+        TaskDao dao = AppDatabase.getsInstance(mContext).taskDao();
+        List<TaskEntry> dueTasks = dao.loadTasksDueBetween(lastFired, now, MAX_NOTIFIED);
+        // a full page : count the others without loading them
+        int count = dueTasks.size() < MAX_NOTIFIED ? dueTasks.size() : dao.countTasksDueBetween(lastFired, now);
+        prefs.edit().putLong(PREF_LAST_FIRED, now).apply();
+
+        mArmedAt = -1;
+        rebuild();
+        return new DueReminders(dueTasks, count);
+    }
+
+
+    // drop a task from the queue, the window is small so a linear search is fine
+    private void removeFromQueue(int taskId) {
+        Iterator<TaskReminder> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().id == taskId) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    // queue emptied but reminders may be left beyond the horizon
+    private void refillIfDrained() {
+        if (mQueue.isEmpty() && mHorizon != Long.MAX_VALUE) {
+            rebuild();
+        }
+    }
+
+    // arm the single alarm on the queue head, or cancel it when nothing is due
+    private void armAlarm() {
+        AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            return;
+        }
+
+        Intent intent = new Intent(mContext, ReminderReceiver.class);
+        intent.setAction(ACTION_REMINDER);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(mContext, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        TaskReminder next = mQueue.peek();
+        if (next == null) {
+            if (mArmedAt != -1) {
+                alarmManager.cancel(pendingIntent);
+                mArmedAt = -1;
+            }
+            return;
+        }
+        if (next.dueAt == mArmedAt) {
+            return;
+        }
+
+        // same PendingIntent every time : setting it again replaces the previous alarm
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, next.dueAt, pendingIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC_WAKEUP, next.dueAt, pendingIntent);
+        }
+        mArmedAt = next.dueAt;
+        Log.d(TAG, "Reminder alarm armed at " + next.dueAt + " for task " + next.id);
+    }
+
+}
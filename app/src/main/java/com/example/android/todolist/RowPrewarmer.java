@@ -0,0 +1,77 @@
+package com.example.android.todolist;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Takes the row creation off the first fling of the task list :
+ * - WARM_ROWS task_layout rows are inflated on a background thread, handed to the TaskAdapter
+ * - holders are built from them while the main thread is idle, one per idle pass,
+ *   and parked in the recycled view pool where layout and prefetch pick them up
+ * -------------------------------------------------------------------------------------------------
+ */
+public class RowPrewarmer implements MessageQueue.IdleHandler {
+
+    // about two screens of rows
+    static final int WARM_ROWS = 16;
+
+    private final RecyclerView mRecyclerView;
+    private final TaskAdapter mAdapter;
+    // inflations not returned yet
+    private int mPending = 0;
+    private int mCreated = 0;
+    private boolean mStopped = false;
+
+    public RowPrewarmer(RecyclerView recyclerView, TaskAdapter adapter) {
+        mRecyclerView = recyclerView;
+        mAdapter = adapter;
+    }
+
+    public void start() {
+        mRecyclerView.getRecycledViewPool().setMaxRecycledViews(TaskAdapter.VIEW_TYPE_TASK, WARM_ROWS);
+
+        AsyncLayoutInflater inflater = new AsyncLayoutInflater(mRecyclerView.getContext());
+        AsyncLayoutInflater.OnInflateFinishedListener listener = new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(@NonNull View view, int resid, @Nullable ViewGroup parent) {
+                mPending--;
+                if (!mStopped) {
+                    mAdapter.addWarmRow(view);
+                }
+            }
+        };
+        for (int i = 0; i < WARM_ROWS; i++) {
+            mPending++;
+            inflater.inflate(R.layout.task_layout, mRecyclerView, listener);
+        }
+        Looper.myQueue().addIdleHandler(this);
+    }
+
+    public void stop() {
+        mStopped = true;
+        Looper.myQueue().removeIdleHandler(this);
+    }
+
+    // @return false when done, the handler is then removed
+    @Override
+    public boolean queueIdle() {
+        if (mStopped || mCreated >= WARM_ROWS) {
+            return false;
+        }
+        // only from warm rows : the main thread never inflates here
+        if (!mAdapter.hasWarmRow()) {
+            return mPending > 0;
+        }
+        RecyclerView.ViewHolder holder = mAdapter.createViewHolder(mRecyclerView, TaskAdapter.VIEW_TYPE_TASK);
+        mRecyclerView.getRecycledViewPool().putRecycledView(holder);
+        mCreated++;
+        return true;
+    }
+}
@@ -0,0 +1,379 @@
+package com.example.android.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.example.android.todolist.database.OutboxEntry;
+import com.example.android.todolist.database.TaskEntry;
+import com.example.android.todolist.database.TaskRepository;
+
+import org.json.JSONException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Delta sync with a remote server : drains the local task_outbox and pulls the remote changes
+ * after a server cursor, in batches of BATCH_SIZE tasks (gzip json, see TaskDeltaCodec).
+ * Conflicts are last-writer-wins on the change time.
+ * The network work runs on AppExecutors.networkIO(), every db access is handed to diskIO().
+ * -------------------------------------------------------------------------------------------------
+ */
+public class SyncEngine {
+
+    private static final String TAG = SyncEngine.class.getSimpleName();
+
+    // tasks per request
+    public static final int BATCH_SIZE = 500;
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS    = 30000;
+
+    // sync state
+    private static final String PREFS_NAME = "sync";
+    private static final String PREF_CURSOR = "server_cursor";
+
+    // singleton instantion
+    private static final Object LOCK = new Object();
+    private static SyncEngine sInstance;
+
+    private final Context mContext;
+    private final AtomicBoolean mRunning = new AtomicBoolean(false);
+
+    private SyncEngine(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public static SyncEngine getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new SyncEngine(context);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Outcome of a sync, with the figures to measure it
+     * ---------------------------------------------------------------------------------------------
+     */
+    public static class SyncResult {
+        public int pushed;
+        public int pulled;
+        public long bytesSent;
+        public long bytesReceived;
+        public long durationMs;
+
+        @Override
+        public String toString() {
+            return "pushed " + pushed + ", pulled " + pulled + ", sent " + bytesSent
+                    + " bytes, received " + bytesReceived + " bytes in " + durationMs + " ms";
+        }
+    }
+
+    // Sync outcome, called on the main thread
+    public interface SyncCallback {
+        void onSyncFinished(SyncResult result, Exception error);
+    }
+
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Start a sync on the network executor; ignored if one is already running
+     * @param serverUrl sync endpoint
+     * @param callback  notified on main thread, may be null
+     * ---------------------------------------------------------------------------------------------
+     */
+    public void syncAsync(final String serverUrl, final SyncCallback callback) {
+        if (!mRunning.compareAndSet(false, true)) {
+            Log.d(TAG, "Sync already running");
+            return;
+        }
+
+        AppExecutors.getInstance().networkIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                SyncResult result = null;
+                Exception error = null;
+                try {
+                    result = sync(serverUrl);
+                } catch (IOException | JSONException e) {
+                    Log.e(TAG, "Sync failed", e);
+                    error = e;
+                } finally {
+                    mRunning.set(false);
+                }
+
+                if (callback != null) {
+                    final SyncResult finalResult = result;
+                    final Exception finalError = error;
+                    AppExecutors.getInstance().mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onSyncFinished(finalResult, finalError);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Local side of a sync : the outbox, the remote changes and the server cursor.
+     * Called on the network thread, the implementation moves the db work where it belongs
+     * ---------------------------------------------------------------------------------------------
+     */
+    interface SyncStore {
+        long getCursor();
+
+        void setCursor(long cursor);
+
+        List<OutboxEntry> loadOutboxBatch(long afterSeq, int limit) throws IOException;
+
+        List<TaskEntry> loadOutboxPayload(List<OutboxEntry> entries) throws IOException;
+
+        void acknowledgeOutbox(List<OutboxEntry> entries) throws IOException;
+
+        // last-writer-wins, see TaskRepository.remoteWins()
+        int applyRemoteChanges(List<TaskEntry> changes) throws IOException;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Run a full sync on the calling thread, which must not be diskIO()
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public SyncResult sync(String serverUrl) throws IOException, JSONException {
+        SyncResult result = sync(serverUrl, new RepositoryStore(TaskRepository.getInstance(mContext),
+                mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)));
+
+        if (result.pulled > 0) {
+            // remote changes may move the next reminder
+            onDisk(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    ReminderScheduler.getInstance(mContext).rebuild();
+                    return null;
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * The sync loop : a round trip per page, pushing a page of the outbox and pulling
+     * the next remote batch, until both sides are done
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    static SyncResult sync(String serverUrl, SyncStore store) throws IOException, JSONException {
+        final long startedAt = System.currentTimeMillis();
+        long cursor = store.getCursor();
+
+        SyncResult result = new SyncResult();
+
+        long afterSeq = 0;
+        boolean localDone = false;
+        boolean remoteMore = true;
+        while (!localDone || remoteMore) {
+            // next page of the outbox : already coalesced, one entry per dirty task
+            List<OutboxEntry> pending = Collections.emptyList();
+            List<TaskEntry> changes = Collections.emptyList();
+            if (!localDone) {
+                pending = store.loadOutboxBatch(afterSeq, BATCH_SIZE);
+                localDone = pending.size() < BATCH_SIZE;
+                if (!pending.isEmpty()) {
+                    afterSeq = pending.get(pending.size() - 1).getSeq();
+                    changes = store.loadOutboxPayload(pending);
+                }
+            }
+
+            // one round trip : push the page, pull the next remote batch
+            byte[] body = TaskDeltaCodec.encodeRequest(cursor, changes);
+            TaskDeltaCodec.DeltaResponse response = post(serverUrl, body, result);
+            result.pushed += changes.size();
+
+            // pushed : the entries can leave the outbox
+            if (!pending.isEmpty()) {
+                store.acknowledgeOutbox(pending);
+            }
+
+            // remote changes are applied without going through the outbox
+            if (!response.changes.isEmpty()) {
+                result.pulled += store.applyRemoteChanges(response.changes);
+            }
+            cursor = response.cursor;
+            remoteMore = response.more;
+            // pulled changes are applied : a crash from here on won't pull them again
+            store.setCursor(cursor);
+        }
+
+        result.durationMs = System.currentTimeMillis() - startedAt;
+        Log.d(TAG, "Sync done : " + result);
+        return result;
+    }
+
+    // the app store : TaskRepository on diskIO(), cursor in the preferences
+    static class RepositoryStore implements SyncStore {
+        private final TaskRepository repository;
+        private final SharedPreferences prefs;
+
+        RepositoryStore(TaskRepository repository, SharedPreferences prefs) {
+            this.repository = repository;
+            this.prefs = prefs;
+        }
+
+        @Override
+        public long getCursor() {
+            return prefs.getLong(PREF_CURSOR, 0);
+        }
+
+        @Override
+        public void setCursor(long cursor) {
+            prefs.edit().putLong(PREF_CURSOR, cursor).apply();
+        }
+
+        @Override
+        public List<OutboxEntry> loadOutboxBatch(final long afterSeq, final int limit) throws IOException {
+            return onDisk(new Callable<List<OutboxEntry>>() {
+                @Override
+                public List<OutboxEntry> call() {
+                    return repository.loadOutboxBatch(afterSeq, limit);
+                }
+            });
+        }
+
+        @Override
+        public List<TaskEntry> loadOutboxPayload(final List<OutboxEntry> entries) throws IOException {
+            return onDisk(new Callable<List<TaskEntry>>() {
+                @Override
+                public List<TaskEntry> call() {
+                    return repository.loadOutboxPayload(entries);
+                }
+            });
+        }
+
+        @Override
+        public void acknowledgeOutbox(final List<OutboxEntry> entries) throws IOException {
+            onDisk(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    repository.acknowledgeOutbox(entries);
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public int applyRemoteChanges(final List<TaskEntry> changes) throws IOException {
+            return onDisk(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return repository.applyRemoteChanges(changes);
+                }
+            });
+        }
+    }
+
+
+    // one compressed POST, counting the bytes on the wire
+    private static TaskDeltaCodec.DeltaResponse post(String serverUrl, byte[] body, SyncResult result)
+            throws IOException, JSONException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(serverUrl).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            result.bytesSent += body.length;
+
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Sync server replied " + code);
+            }
+
+            // Accept-Encoding set by hand : the body is not gunzipped for us, and may come plain
+            boolean gzipped = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+            CountingInputStream in = new CountingInputStream(connection.getInputStream());
+            try {
+                return TaskDeltaCodec.decodeResponse(in, gzipped);
+            } finally {
+                result.bytesReceived += in.count;
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // run a db step on diskIO() and wait for it
+    private static <T> T onDisk(Callable<T> callable) throws IOException {
+        FutureTask<T> task = new FutureTask<>(callable);
+        AppExecutors.getInstance().diskIO().execute(task);
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sync interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Sync db step failed", e.getCause());
+        }
+    }
+
+    // counts the compressed bytes read from the connection
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
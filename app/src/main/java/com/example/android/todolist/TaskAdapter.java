@@ -2,19 +2,30 @@ package com.example.android.todolist;
 
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.drawable.GradientDrawable;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import com.example.android.todolist.database.CacheRegistry;
 import com.example.android.todolist.database.TaskEntry;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -23,21 +34,44 @@ import java.util.Locale;
 * TaskAdapter for create binding ViewHolders toRecycleView (Task's description, priority)
 * -----------------------------------------------------------------------------------------
  */
-public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHolder> {
+public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHolder>
+        implements CacheRegistry.TrimmableCache {
 
     // Date format
     private static final String DATE_FORMAT = "dd/MM/yyy";
 
+    // single row layout
+    static final int VIEW_TYPE_TASK = 0;
+
     // Handle item clicks
     final private ItemClickListener mItemClickListener;
 
-    // Holds task data
+    // Holds task data : the visible rows, root tasks with their expanded subtasks
     private List<TaskEntry> mTaskEntries;
     private Context         mContext;
 
+    // Subtasks tree : root tasks from LiveData, children loaded on expand and cached by parent id.
+    // A cached empty list means a leaf
+    private List<TaskEntry> mRootEntries;
+    private final SparseArray<List<TaskEntry>> mChildren = new SparseArray<>();
+    private final SparseBooleanArray mExpandedIds = new SparseBooleanArray();
+    // depth of the visible rows, by task id
+    private final SparseIntArray mDepths = new SparseIntArray();
+    private final int mIndent;
+    private final int mRowPadding;
+
+    // rows inflated ahead off the main thread, see RowPrewarmer
+    private final ArrayDeque<View> mWarmRows = new ArrayDeque<>();
+    // rows inflated on the main thread, none expected once the prewarmer is done
+    private int mInflatedRows = 0;
+
     // Date formatter
     private SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
 
+    // Multi-select : ids of the selected tasks, primitive keys (no boxing)
+    private final SparseBooleanArray mSelectedIds = new SparseBooleanArray();
+    private boolean mSelectionMode = false;
+
 
     /**
      * ----------------------------------------------------------------------------------
@@ -49,6 +83,8 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
     public TaskAdapter(Context context, ItemClickListener listener) {
         mContext = context;
         mItemClickListener = listener;
+        mIndent = context.getResources().getDimensionPixelSize(R.dimen.subtask_indent);
+        mRowPadding = context.getResources().getDimensionPixelSize(R.dimen.activity_horizontal_margin);
     }
 
     /**
@@ -59,13 +95,29 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
      */
     @Override
     public TaskViewRowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        // Inflate the task_layout to each view
-        View view = LayoutInflater.from(mContext)
-                .inflate(R.layout.task_layout, parent, false);
+        // a row inflated ahead if any, else inflate the task_layout now
+        View view = mWarmRows.poll();
+        if (view == null) {
+            view = LayoutInflater.from(mContext)
+                    .inflate(R.layout.task_layout, parent, false);
+            mInflatedRows++;
+        }
 
         return new TaskViewRowHolder(view);
     }
 
+    void addWarmRow(View row) {
+        mWarmRows.add(row);
+    }
+
+    boolean hasWarmRow() {
+        return !mWarmRows.isEmpty();
+    }
+
+    int getInflatedRows() {
+        return mInflatedRows;
+    }
+
     /**
      * ----------------------------------------------------------------------------------
      * Called by the RecyclerView to display data at a specified position in the Cursor.
@@ -79,12 +131,24 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
         TaskEntry taskEntry = mTaskEntries.get(position);
         String description  = taskEntry.getDescription();
         int priority        = taskEntry.getPriority();
-        String updatedAt    = dateFormat.format(taskEntry.getUpdatedAt());
+        // tasks pulled from the sync server may come without an edit time
+        String updatedAt    = taskEntry.getUpdatedAt() == null ? "" : dateFormat.format(taskEntry.getUpdatedAt());
 
         //Set values
         holder.taskDescriptionView.setText(description);
         holder.updatedAtView.setText(updatedAt);
 
+        // completed tasks are struck through
+        int paintFlags = holder.taskDescriptionView.getPaintFlags();
+        holder.taskDescriptionView.setPaintFlags(taskEntry.isCompleted()
+                ? paintFlags | Paint.STRIKE_THRU_TEXT_FLAG
+                : paintFlags & ~Paint.STRIKE_THRU_TEXT_FLAG);
+
+        // highlight the selected rows
+        holder.itemView.setBackgroundColor(mSelectedIds.get(taskEntry.getId())
+                ? ContextCompat.getColor(mContext, R.color.colorPrimaryLight)
+                : Color.TRANSPARENT);
+
         // Programmatically set the text/color for the priority TextView
         // String priorityString = "" + priority; // to convert int to String
         holder.priorityView.setText(Integer.toString(priority));
@@ -93,6 +157,20 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
         // Get the appropriate background color based on the priority
         int priorityColor = getPriorityColor(priority);
         priorityCircle.setColor(priorityColor);
+
+        // subtasks are indented, the toggle is hidden once a task is known to be a leaf
+        int id = taskEntry.getId();
+        // ViewCompat : setPaddingRelative() is API 17
+        ViewCompat.setPaddingRelative(holder.itemView, mRowPadding + mDepths.get(id) * mIndent,
+                holder.itemView.getPaddingTop(), mRowPadding, holder.itemView.getPaddingBottom());
+        List<TaskEntry> children = mChildren.get(id);
+        if (children != null && children.isEmpty()) {
+            holder.expandView.setVisibility(View.INVISIBLE);
+        } else {
+            holder.expandView.setVisibility(View.VISIBLE);
+            holder.expandView.setText(mExpandedIds.get(id)
+                    ? R.string.subtasks_collapse : R.string.subtasks_expand);
+        }
     }
 
 
@@ -138,13 +216,187 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
 
     /**
     * ----------------------------------------------------------------------------------
-    * At data changes, updates taskEntries list in RecycleView.
+    * At data changes, updates the root taskEntries list in RecycleView.
+    * Cached subtasks may be stale : the expanded ones are asked again, the others dropped.
     * Notifies adapter to use the new values
     * ----------------------------------------------------------------------------------
      */
     public void setTasks(List<TaskEntry> taskEntries) {
-        mTaskEntries = taskEntries;
+        mRootEntries = taskEntries;
+        for (int i = mChildren.size() - 1; i >= 0; i--) {
+            int parentId = mChildren.keyAt(i);
+            if (mExpandedIds.get(parentId)) {
+                mItemClickListener.onLoadChildren(parentId);
+            } else {
+                mChildren.removeAt(i);
+            }
+        }
         //data changed, refresh the view : notify the related observers
+        rebuildRows();
+    }
+
+    /**
+    * ----------------------------------------------------------------------------------
+    * Subtasks loaded for an expanded task
+    * ----------------------------------------------------------------------------------
+     */
+    public void setChildren(int parentId, List<TaskEntry> children) {
+        mChildren.put(parentId, children);
+        rebuildRows();
+    }
+
+    // expand/collapse a row, children are asked to the listener the first time
+    private void toggleExpanded(int position) {
+        int id = mTaskEntries.get(position).getId();
+        if (mExpandedIds.get(id)) {
+            mExpandedIds.delete(id);
+        } else {
+            mExpandedIds.put(id, true);
+            if (mChildren.get(id) == null) {
+                mItemClickListener.onLoadChildren(id);
+                notifyItemChanged(position);
+                return;
+            }
+        }
+        rebuildRows();
+    }
+
+    // flatten the tree : each expanded task is followed by its loaded children
+    private void rebuildRows() {
+        mDepths.clear();
+        if (mRootEntries == null) {
+            mTaskEntries = null;
+        } else {
+            List<TaskEntry> rows = new ArrayList<>(mRootEntries.size());
+            addRows(rows, mRootEntries, 0);
+            mTaskEntries = rows;
+        }
+        notifyDataSetChanged();
+    }
+
+    // subtasks cached for the collapsed rows only : the expanded ones are on screen
+    @Override
+    public long estimateBytes() {
+        long count = 0;
+        for (int i = 0; i < mChildren.size(); i++) {
+            count += mChildren.valueAt(i).size();
+        }
+        return count * CacheRegistry.TASK_ENTRY_BYTES;
+    }
+
+    // the children of a collapsed row are loaded again on expand
+    @Override
+    public void trim(float keepFraction) {
+        for (int i = mChildren.size() - 1; i >= 0; i--) {
+            if (!mExpandedIds.get(mChildren.keyAt(i))) {
+                mChildren.removeAt(i);
+            }
+        }
+    }
+
+    private void addRows(List<TaskEntry> rows, List<TaskEntry> entries, int depth) {
+        for (TaskEntry entry : entries) {
+            rows.add(entry);
+            mDepths.put(entry.getId(), depth);
+            List<TaskEntry> children = mChildren.get(entry.getId());
+            if (children != null && mExpandedIds.get(entry.getId())) {
+                addRows(rows, children, depth + 1);
+            }
+        }
+    }
+
+    /**
+    * ----------------------------------------------------------------------------------
+    * Move an item while it is dragged : only the local list is changed,
+    * the new order is persisted on drop
+    * ----------------------------------------------------------------------------------
+     */
+    public boolean canMoveItem(int fromPosition, int toPosition) {
+        TaskEntry from = mTaskEntries.get(fromPosition);
+        TaskEntry to   = mTaskEntries.get(toPosition);
+        return from.getPriority() == to.getPriority() && sameParent(from, to);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Nearest row under the same parent as the row at a position, the expanded subtrees
+     * in between skipped : the neighbours of a drop, see TaskRepository.moveTask()
+     * @param direction -1 to look above, 1 below
+     * @return null if none
+     * ---------------------------------------------------------------------------------------------
+     */
+    public TaskEntry findSibling(int position, int direction) {
+        TaskEntry task = mTaskEntries.get(position);
+        for (int i = position + direction; i >= 0 && i < mTaskEntries.size(); i += direction) {
+            if (sameParent(task, mTaskEntries.get(i))) {
+                return mTaskEntries.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameParent(TaskEntry task, TaskEntry other) {
+        Integer parentId = task.getParentId();
+        return parentId == null ? other.getParentId() == null : parentId.equals(other.getParentId());
+    }
+
+    public void moveItem(int fromPosition, int toPosition) {
+        if (fromPosition < toPosition) {
+            for (int i = fromPosition; i < toPosition; i++) {
+                Collections.swap(mTaskEntries, i, i + 1);
+            }
+        } else {
+            for (int i = fromPosition; i > toPosition; i--) {
+                Collections.swap(mTaskEntries, i, i - 1);
+            }
+        }
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    /**
+    * ----------------------------------------------------------------------------------
+    * Multi-select : in selection mode a click toggles the row instead of opening it
+    * ----------------------------------------------------------------------------------
+     */
+    public boolean isSelectionMode() {
+        return mSelectionMode;
+    }
+
+    public void toggleSelection(int position) {
+        int id = mTaskEntries.get(position).getId();
+        if (mSelectedIds.get(id)) {
+            mSelectedIds.delete(id);
+        } else {
+            mSelectedIds.put(id, true);
+        }
+        mSelectionMode = mSelectedIds.size() > 0;
+        notifyItemChanged(position);
+        mItemClickListener.onSelectionChanged(mSelectedIds.size());
+    }
+
+    public void setSelectedIds(int[] ids) {
+        mSelectedIds.clear();
+        for (int id : ids) {
+            mSelectedIds.put(id, true);
+        }
+        mSelectionMode = mSelectedIds.size() > 0;
+        notifyDataSetChanged();
+    }
+
+    public int[] getSelectedIds() {
+        int[] ids = new int[mSelectedIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mSelectedIds.keyAt(i);
+        }
+        return ids;
+    }
+
+    public void clearSelection() {
+        if (mSelectedIds.size() == 0 && !mSelectionMode) {
+            return;
+        }
+        mSelectedIds.clear();
+        mSelectionMode = false;
         notifyDataSetChanged();
     }
 
@@ -174,6 +426,15 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
      */
     public interface ItemClickListener {
         void onItemClickListener(int itemId);
+
+        // selection mode started/changed/ended (count == 0)
+        void onSelectionChanged(int selectedCount);
+
+        // the user grabbed the drag handle of a row
+        void onStartDrag(RecyclerView.ViewHolder viewHolder);
+
+        // a task has been expanded : load its subtasks, then call setChildren()
+        void onLoadChildren(int parentId);
     }
 
 
@@ -182,12 +443,14 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
     * Inner class for creating ViewHolders
     * ----------------------------------------------------------------------------------
      */
-    class TaskViewRowHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    class TaskViewRowHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnLongClickListener {
 
         // Class variables for the task description and priority TextViews
         TextView taskDescriptionView;
         TextView updatedAtView;
         TextView priorityView;
+        TextView expandView;
 
         // TaskViewHolders Constructor
         // @param itemView view inflated in onCreateViewHolder
@@ -197,14 +460,59 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewRowHol
             taskDescriptionView = itemView.findViewById(R.id.taskDescription);
             updatedAtView       = itemView.findViewById(R.id.taskUpdatedAt);
             priorityView        = itemView.findViewById(R.id.priorityTextView);
+            expandView          = itemView.findViewById(R.id.expandTextView);
+            // own copy of the circle : the drawable state is shared by all the rows
+            priorityView.getBackground().mutate();
             itemView.setOnClickListener(this);
+
+            expandView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    int position = getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        toggleExpanded(position);
+                    }
+                }
+            });
+            itemView.setOnLongClickListener(this);
+
+            // the priority circle is the drag handle
+            priorityView.setOnTouchListener(new View.OnTouchListener() {
+                @Override
+                public boolean onTouch(View view, MotionEvent event) {
+                    if (event.getActionMasked() == MotionEvent.ACTION_DOWN && !mSelectionMode) {
+                        mItemClickListener.onStartDrag(TaskViewRowHolder.this);
+                        return true;
+                    }
+                    return false;
+                }
+            });
         }
 
         @Override
         public void onClick(View view) {
-            int elementId = mTaskEntries.get(getAdapterPosition()).getId();
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            if (mSelectionMode) {
+                toggleSelection(position);
+                return;
+            }
+            int elementId = mTaskEntries.get(position).getId();
             mItemClickListener.onItemClickListener(elementId);
         }
+
+        // long press starts the selection mode
+        @Override
+        public boolean onLongClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            toggleSelection(position);
+            return true;
+        }
     }
 
 
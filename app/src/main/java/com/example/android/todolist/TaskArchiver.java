@@ -0,0 +1,62 @@
+package com.example.android.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.todolist.database.TaskRepository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Periodic move of the old completed tasks to the archive table (hot/cold split).
+ * The age is set in the preferences, 0 days disables the archiving.
+ * Runs at most once per ARCHIVE_PERIOD.
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TaskArchiver {
+
+    // min time between two archive runs
+    private static final long ARCHIVE_PERIOD = TimeUnit.HOURS.toMillis(12);
+
+    private static final String PREFS_NAME = "maintenance";
+    private static final String PREF_LAST_ARCHIVE = "last_archive";
+
+    private TaskArchiver() {
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Archive the tasks completed before the configured age, if the last run is old enough.
+     * Call from AppExecutors.diskIO()
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public static void archiveIfDue(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(PREF_LAST_ARCHIVE, 0) < ARCHIVE_PERIOD) {
+            return;
+        }
+
+        long ageDays = getArchiveAgeDays(context);
+        if (ageDays > 0) {
+            TaskRepository.getInstance(context).archiveCompleted(now - TimeUnit.DAYS.toMillis(ageDays));
+        }
+        prefs.edit().putLong(PREF_LAST_ARCHIVE, now).apply();
+    }
+
+    // age set in settings
+    private static long getArchiveAgeDays(Context context) {
+        String value = PreferenceManager.getDefaultSharedPreferences(context).getString(
+                context.getString(R.string.settings_archive_age_key),
+                context.getString(R.string.settings_archive_age_default));
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.android.todolist;
+
+import com.example.android.todolist.database.TaskEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Wire format of the delta sync : gzip compressed json, a response may also come plain.
+ * Request  : { "cursor" : long, "changes" : [task, ...] }
+ * Response : { "cursor" : long, "more" : boolean, "changes" : [task, ...] }
+ * where the cursor is the server position of the last change already pulled
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TaskDeltaCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // json keys, same names as the db columns
+    private static final String KEY_CURSOR       = "cursor";
+    private static final String KEY_MORE         = "more";
+    private static final String KEY_CHANGES      = "changes";
+    private static final String KEY_UID          = "uid";
+    private static final String KEY_DESCRIPTION  = "description";
+    private static final String KEY_PRIORITY     = "priority";
+    private static final String KEY_UPDATED_AT   = "updated_at";
+    private static final String KEY_DUE_AT       = "due_at";
+    private static final String KEY_RANK         = "sort_rank";
+    private static final String KEY_COMPLETED_AT = "completed_at";
+    private static final String KEY_DELETED_AT   = "deleted_at";
+
+    private TaskDeltaCodec() {
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * A decoded server response
+     * ---------------------------------------------------------------------------------------------
+     */
+    public static class DeltaResponse {
+        public final long cursor;
+        public final boolean more;
+        public final List<TaskEntry> changes;
+
+        DeltaResponse(long cursor, boolean more, List<TaskEntry> changes) {
+            this.cursor = cursor;
+            this.more = more;
+            this.changes = changes;
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Build the compressed request body
+     * @param cursor  last server position pulled
+     * @param changes local changes to push
+     * ---------------------------------------------------------------------------------------------
+     */
+    public static byte[] encodeRequest(long cursor, List<TaskEntry> changes) throws JSONException, IOException {
+        JSONObject request = new JSONObject();
+        request.put(KEY_CURSOR, cursor);
+        request.put(KEY_CHANGES, encodeTasks(changes));
+        return gzip(request.toString());
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Build a compressed response body, the server side of encodeRequest()
+     * ---------------------------------------------------------------------------------------------
+     */
+    public static byte[] encodeResponse(long cursor, boolean more, List<TaskEntry> changes)
+            throws JSONException, IOException {
+        JSONObject response = new JSONObject();
+        response.put(KEY_CURSOR, cursor);
+        response.put(KEY_MORE, more);
+        response.put(KEY_CHANGES, encodeTasks(changes));
+        return gzip(response.toString());
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Read a response body
+     * @param gzipped false when the server replied without Content-Encoding gzip
+     * ---------------------------------------------------------------------------------------------
+     */
+    public static DeltaResponse decodeResponse(InputStream body, boolean gzipped)
+            throws JSONException, IOException {
+        JSONObject response = new JSONObject(readText(gzipped ? new GZIPInputStream(body) : body));
+        return new DeltaResponse(response.getLong(KEY_CURSOR),
+                response.optBoolean(KEY_MORE, false),
+                decodeTasks(response.getJSONArray(KEY_CHANGES)));
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Read a compressed request body : returns the changes, cursor in cursorOut[0]
+     * ---------------------------------------------------------------------------------------------
+     */
+    public static List<TaskEntry> decodeRequest(InputStream gzipped, long[] cursorOut)
+            throws JSONException, IOException {
+        JSONObject request = new JSONObject(readText(new GZIPInputStream(gzipped)));
+        cursorOut[0] = request.getLong(KEY_CURSOR);
+        return decodeTasks(request.getJSONArray(KEY_CHANGES));
+    }
+
+
+    private static JSONArray encodeTasks(List<TaskEntry> tasks) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (TaskEntry task : tasks) {
+            JSONObject json = new JSONObject();
+            json.put(KEY_UID, task.getUid());
+            json.put(KEY_DESCRIPTION, task.getDescription());
+            json.put(KEY_PRIORITY, task.getPriority());
+            json.put(KEY_RANK, task.getRank());
+            putDate(json, KEY_UPDATED_AT, task.getUpdatedAt());
+            putDate(json, KEY_DUE_AT, task.getDueAt());
+            putDate(json, KEY_COMPLETED_AT, task.getCompletedAt());
+            putDate(json, KEY_DELETED_AT, task.getDeletedAt());
+            array.put(json);
+        }
+        return array;
+    }
+
+    private static List<TaskEntry> decodeTasks(JSONArray array) throws JSONException {
+        List<TaskEntry> tasks = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject json = array.getJSONObject(i);
+            tasks.add(new TaskEntry(0,
+                    json.optString(KEY_DESCRIPTION, ""),
+                    json.getInt(KEY_PRIORITY),
+                    getDate(json, KEY_UPDATED_AT),
+                    getDate(json, KEY_DUE_AT),
+                    json.optDouble(KEY_RANK, 0),
+                    getDate(json, KEY_COMPLETED_AT),
+                    getDate(json, KEY_DELETED_AT),
+                    json.getString(KEY_UID),
+                    null));
+        }
+        return tasks;
+    }
+
+    // dates as epoch millis, missing key for null
+    private static void putDate(JSONObject json, String key, Date date) throws JSONException {
+        if (date != null) {
+            json.put(key, date.getTime());
+        }
+    }
+
+    private static Date getDate(JSONObject json, String key) {
+        return json.has(key) ? new Date(json.optLong(key)) : null;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(bytes);
+        try {
+            out.write(text.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String readText(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.android.todolist;
+
+import android.app.Application;
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.arch.lifecycle.ProcessLifecycleOwner;
+
+import com.example.android.todolist.database.CacheRegistry;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Process wide hooks : the db maintenance runs while the whole app is in background
+ * (ProcessLifecycleOwner ignores the activity switches and the rotations),
+ * the memory pressure signals go to the CacheRegistry.
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TodoListApplication extends Application implements LifecycleObserver {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        CacheRegistry.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        CacheRegistry.getInstance().onLowMemory();
+    }
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+    void onAppBackground() {
+        DatabaseMaintenance.scheduleIfDue(this);
+    }
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_START)
+    void onAppForeground() {
+        DatabaseMaintenance.cancel();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.android.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.todolist.database.TaskRepository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Periodic purge of the soft-deleted tasks : tombstones are kept long enough for the undo,
+ * then physically removed in batches. Runs at most once per COMPACTION_PERIOD.
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TombstoneCompactor {
+
+    // age after which a tombstone can't be restored anymore
+    private static final long TOMBSTONE_TTL = TimeUnit.DAYS.toMillis(1);
+    // min time between two compactions
+    private static final long COMPACTION_PERIOD = TimeUnit.HOURS.toMillis(12);
+
+    private static final String PREFS_NAME = "maintenance";
+    private static final String PREF_LAST_COMPACTION = "last_tombstone_compaction";
+
+    private TombstoneCompactor() {
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Purge the expired tombstones if the last compaction is old enough.
+     * Call from AppExecutors.diskIO()
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public static void compactIfDue(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(PREF_LAST_COMPACTION, 0) < COMPACTION_PERIOD) {
+            return;
+        }
+
+        TaskRepository.getInstance(context).purgeTombstones(now - TOMBSTONE_TTL);
+        prefs.edit().putLong(PREF_LAST_COMPACTION, now).apply();
+    }
+}
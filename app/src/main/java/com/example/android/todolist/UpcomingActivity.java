@@ -0,0 +1,163 @@
+package com.example.android.todolist;
+
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModelProviders;
+import android.graphics.Paint;
+import android.graphics.drawable.GradientDrawable;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.example.android.todolist.database.Occurrence;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+
+import static android.support.v7.widget.DividerItemDecoration.VERTICAL;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Upcoming occurrences of the repeating tasks, a week more each time the end of the list
+ * is reached. Tap marks an occurrence done (or not), long press skips it
+ * -------------------------------------------------------------------------------------------------
+ */
+public class UpcomingActivity extends AppCompatActivity {
+
+    private UpcomingAdapter mAdapter;
+    private UpcomingViewModel mViewModel;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_upcoming);
+
+        ActionBar actionBar = this.getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        RecyclerView recyclerView = findViewById(R.id.recyclerViewUpcoming);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        mAdapter = new UpcomingAdapter();
+        recyclerView.setAdapter(mAdapter);
+        recyclerView.addItemDecoration(new DividerItemDecoration(getApplicationContext(), VERTICAL));
+
+        mViewModel = ViewModelProviders.of(this).get(UpcomingViewModel.class);
+        mViewModel.getOccurrences().observe(this, new Observer<List<Occurrence>>() {
+            @Override
+            public void onChanged(@Nullable List<Occurrence> occurrences) {
+                mAdapter.setOccurrences(occurrences);
+            }
+        });
+
+        // next week when the last row shows up
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - 1) {
+                    mViewModel.loadMore(mAdapter.getItemCount());
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            onBackPressed();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Adapter for the occurrence rows : description, occurrence time and priority
+     * ---------------------------------------------------------------------------------------------
+     */
+    private class UpcomingAdapter extends RecyclerView.Adapter<UpcomingAdapter.OccurrenceRowHolder> {
+
+        private final DateFormat dateFormat =
+                DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
+        private List<Occurrence> mOccurrences;
+
+        @Override
+        public OccurrenceRowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(UpcomingActivity.this)
+                    .inflate(R.layout.task_layout, parent, false);
+            return new OccurrenceRowHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(OccurrenceRowHolder holder, int position) {
+            Occurrence occurrence = mOccurrences.get(position);
+            holder.descriptionView.setText(occurrence.getTask().getDescription());
+            holder.dateView.setText(dateFormat.format(new Date(occurrence.getOccursAt())));
+            holder.priorityView.setText(Integer.toString(occurrence.getTask().getPriority()));
+            ((GradientDrawable) holder.priorityView.getBackground().mutate()).setColor(
+                    ContextCompat.getColor(UpcomingActivity.this, R.color.colorPrimaryLight));
+
+            int paintFlags = holder.descriptionView.getPaintFlags();
+            holder.descriptionView.setPaintFlags(occurrence.isCompleted()
+                    ? paintFlags | Paint.STRIKE_THRU_TEXT_FLAG
+                    : paintFlags & ~Paint.STRIKE_THRU_TEXT_FLAG);
+        }
+
+        @Override
+        public int getItemCount() {
+            return mOccurrences == null ? 0 : mOccurrences.size();
+        }
+
+        void setOccurrences(List<Occurrence> occurrences) {
+            mOccurrences = occurrences;
+            notifyDataSetChanged();
+        }
+
+        class OccurrenceRowHolder extends RecyclerView.ViewHolder
+                implements View.OnClickListener, View.OnLongClickListener {
+            TextView descriptionView;
+            TextView dateView;
+            TextView priorityView;
+
+            OccurrenceRowHolder(View itemView) {
+                super(itemView);
+                descriptionView = itemView.findViewById(R.id.taskDescription);
+                dateView        = itemView.findViewById(R.id.taskUpdatedAt);
+                priorityView    = itemView.findViewById(R.id.priorityTextView);
+                itemView.setOnClickListener(this);
+                itemView.setOnLongClickListener(this);
+            }
+
+            @Override
+            public void onClick(View view) {
+                int position = getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    mViewModel.toggleCompleted(mOccurrences.get(position));
+                }
+            }
+
+            @Override
+            public boolean onLongClick(View view) {
+                int position = getAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) {
+                    return false;
+                }
+                mViewModel.skip(mOccurrences.get(position));
+                return true;
+            }
+        }
+    }
+}
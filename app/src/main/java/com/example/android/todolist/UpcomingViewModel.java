@@ -0,0 +1,94 @@
+package com.example.android.todolist;
+
+import android.app.Application;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.support.annotation.NonNull;
+
+import com.example.android.todolist.database.Occurrence;
+import com.example.android.todolist.database.OccurrenceState;
+import com.example.android.todolist.database.TaskRepository;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * ViewModel Class for the upcoming occurrences : from today, a week more at each loadMore().
+ * Occurrences are computed by the repository per window, nothing is stored but the exceptions
+ * -------------------------------------------------------------------------------------------------
+ */
+public class UpcomingViewModel extends AndroidViewModel {
+
+    // time range added at each loadMore()
+    private static final long PAGE_SPAN = TimeUnit.DAYS.toMillis(7);
+
+    private final MutableLiveData<List<Occurrence>> occurrences = new MutableLiveData<>();
+    private final TaskRepository repository;
+
+    // loaded range, main thread only
+    private final long from;
+    private long to;
+
+    public UpcomingViewModel(@NonNull Application application) {
+        super(application);
+        repository = TaskRepository.getInstance(application);
+
+        Calendar today = Calendar.getInstance();
+        today.set(Calendar.HOUR_OF_DAY, 0);
+        today.set(Calendar.MINUTE, 0);
+        today.set(Calendar.SECOND, 0);
+        today.set(Calendar.MILLISECOND, 0);
+        from = today.getTimeInMillis();
+        to = from + PAGE_SPAN - 1;
+        reload();
+    }
+
+    public LiveData<List<Occurrence>> getOccurrences() {
+        return occurrences;
+    }
+
+    // extend the range when the list end is reached
+    public void loadMore(int loadedCount) {
+        List<Occurrence> current = occurrences.getValue();
+        if (current != null && loadedCount >= current.size()) {
+            to += PAGE_SPAN;
+            reload();
+        }
+    }
+
+    // tap : done/not done, only this occurrence
+    public void toggleCompleted(Occurrence occurrence) {
+        setState(occurrence, occurrence.isCompleted() ? 0 : OccurrenceState.STATE_COMPLETED);
+    }
+
+    // long press : skip this occurrence, the rule goes on
+    public void skip(Occurrence occurrence) {
+        setState(occurrence, OccurrenceState.STATE_SKIPPED);
+    }
+
+    private void setState(final Occurrence occurrence, final int state) {
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                repository.setOccurrenceState(occurrence.getTaskId(), occurrence.getOccursAt(), state);
+            }
+        });
+        reload();
+    }
+
+    // windows already read are served from the repository cache
+    private void reload() {
+        final long rangeFrom = from;
+        final long rangeTo = to;
+        AppExecutors.getInstance().diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                occurrences.postValue(repository.loadOccurrences(rangeFrom, rangeTo));
+            }
+        });
+    }
+}
@@ -1,11 +1,15 @@
  package com.example.android.todolist.database;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
 import android.arch.persistence.room.TypeConverter;
 import android.arch.persistence.room.TypeConverters;
+import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
  /**
@@ -13,14 +17,241 @@ import android.util.Log;
   * AppDatabase db
   * -----------------------------------------------------------------------------
   */
- @Database(entities = {TaskEntry.class}, version = 1, exportSchema = false)
+ @Database(entities = {TaskEntry.class, OutboxEntry.class, ArchivedTaskEntry.class,
+        TaskClosure.class, TagEntry.class, TaskTag.class,
+        RecurrenceRule.class, OccurrenceState.class, TaskBody.class,
+        TaskDraft.class, TaskCounter.class}, version = 14, exportSchema = false)
 @TypeConverters(DateConverter.class)
 public abstract class AppDatabase extends RoomDatabase {
     private static final String LOG_TAG = AppDatabase.class.getSimpleName();
     private static final Object LOCK = new Object();
-    private static final String DATABASE_NAME = "todolist";
+    public static final String DATABASE_NAME = "todolist";
     private static AppDatabase sInstance;
 
+    // v2 : due_at reminder column
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE task ADD COLUMN due_at INTEGER");
+            database.execSQL("CREATE INDEX index_task_due_at ON task (due_at)");
+        }
+    };
+
+    // v3 : sort_rank for manual ordering, existing tasks keep their insertion order
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE task ADD COLUMN sort_rank REAL NOT NULL DEFAULT 0");
+            database.execSQL("UPDATE task SET sort_rank = id * " + TaskRepository.RANK_GAP);
+            database.execSQL("CREATE INDEX index_task_priority_sort_rank ON task (priority, sort_rank)");
+        }
+    };
+
+    // v4 : completed_at completion time
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE task ADD COLUMN completed_at INTEGER");
+        }
+    };
+
+    // v5 : deleted_at tombstone for soft delete
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE task ADD COLUMN deleted_at INTEGER");
+            createPartialIndices(database);
+        }
+    };
+
+    // v6 : uid global id for sync, generated for the existing tasks
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE task ADD COLUMN uid TEXT");
+            database.execSQL("UPDATE task SET uid = lower(hex(randomblob(16)))");
+            database.execSQL("CREATE UNIQUE INDEX index_task_uid ON task (uid)");
+        }
+    };
+
+    // v7 : task_outbox of the mutations to push; every task is queued once
+    // so nothing edited since the last sync is lost
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_outbox (task_id INTEGER NOT NULL, "
+                    + "uid TEXT, op INTEGER NOT NULL, seq INTEGER NOT NULL, "
+                    + "queued_at INTEGER NOT NULL, PRIMARY KEY(task_id))");
+            database.execSQL("CREATE INDEX index_task_outbox_seq ON task_outbox (seq)");
+            database.execSQL("INSERT INTO task_outbox (task_id, uid, op, seq, queued_at) "
+                    + "SELECT id, uid, " + OutboxEntry.OP_UPDATE + ", id, COALESCE(updated_at, 0) FROM task");
+        }
+    };
+
+    // v8 : task_archive cold table for old completed tasks
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX index_task_completed_at ON task (completed_at)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_archive ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, description TEXT, "
+                    + "priority INTEGER NOT NULL, updated_at INTEGER, due_at INTEGER, "
+                    + "sort_rank REAL NOT NULL, completed_at INTEGER, deleted_at INTEGER, uid TEXT)");
+            database.execSQL("CREATE INDEX index_task_archive_completed_at ON task_archive (completed_at)");
+            database.execSQL("CREATE UNIQUE INDEX index_task_archive_uid ON task_archive (uid)");
+        }
+    };
+
+    // v9 : subtasks, parent_id and the task_closure tree; existing tasks are roots
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE task ADD COLUMN parent_id INTEGER");
+            database.execSQL("ALTER TABLE task_archive ADD COLUMN parent_id INTEGER");
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_closure (ancestor_id INTEGER NOT NULL, "
+                    + "descendant_id INTEGER NOT NULL, depth INTEGER NOT NULL, "
+                    + "PRIMARY KEY(ancestor_id, descendant_id))");
+            database.execSQL("CREATE INDEX index_task_closure_descendant_id ON task_closure (descendant_id)");
+            database.execSQL("INSERT INTO task_closure (ancestor_id, descendant_id, depth) "
+                    + "SELECT id, id, 0 FROM task");
+            // the live index now covers the root list only
+            database.execSQL("DROP INDEX IF EXISTS index_task_live");
+            createPartialIndices(database);
+        }
+    };
+
+    // v10 : tags, many-to-many through task_tag
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS tag (id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "name TEXT)");
+            database.execSQL("CREATE UNIQUE INDEX index_tag_name ON tag (name)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_tag (task_id INTEGER NOT NULL, "
+                    + "tag_id INTEGER NOT NULL, PRIMARY KEY(task_id, tag_id))");
+            database.execSQL("CREATE INDEX index_task_tag_tag_id ON task_tag (tag_id)");
+        }
+    };
+
+    // v11 : recurring tasks, the rules and the completed/skipped occurrences only
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_recurrence (task_id INTEGER NOT NULL, "
+                    + "unit INTEGER NOT NULL, every INTEGER NOT NULL, weekdays INTEGER NOT NULL, "
+                    + "starts_at INTEGER NOT NULL, until_at INTEGER, PRIMARY KEY(task_id))");
+            database.execSQL("CREATE INDEX index_task_recurrence_starts_at ON task_recurrence (starts_at)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_occurrence (task_id INTEGER NOT NULL, "
+                    + "occurs_at INTEGER NOT NULL, state INTEGER NOT NULL, PRIMARY KEY(task_id, occurs_at))");
+            database.execSQL("CREATE INDEX index_task_occurrence_occurs_at ON task_occurrence (occurs_at)");
+        }
+    };
+
+    // v12 : long descriptions out of row, the row keeps a preview (see TaskBodyCodec).
+    // Existing ones are moved uncompressed : sql has no deflate, they are compressed when saved
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_body (task_id INTEGER NOT NULL, "
+                    + "encoding INTEGER NOT NULL, content BLOB, PRIMARY KEY(task_id))");
+            for (String table : new String[]{"task", "task_archive"}) {
+                database.execSQL("INSERT INTO task_body (task_id, encoding, content) "
+                        + "SELECT id, " + TaskBody.ENCODING_UTF8 + ", CAST(description AS BLOB) FROM " + table
+                        + " WHERE length(description) > " + TaskBodyCodec.PREVIEW_LENGTH);
+                database.execSQL("UPDATE " + table + " SET description = substr(description, 1, "
+                        + TaskBodyCodec.PREVIEW_LENGTH + ") || '\u2026' "
+                        + "WHERE length(description) > " + TaskBodyCodec.PREVIEW_LENGTH);
+            }
+        }
+    };
+
+    // v13 : autosaved drafts of the task editor
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_draft (task_id INTEGER NOT NULL, "
+                    + "description TEXT, priority INTEGER NOT NULL, due_at INTEGER, "
+                    + "saved_at INTEGER NOT NULL, PRIMARY KEY(task_id))");
+        }
+    };
+
+    // v14 : counters of the list header (open root tasks), filled from the current tasks
+    static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS task_counter (name TEXT NOT NULL, "
+                    + "value INTEGER NOT NULL, PRIMARY KEY(name))");
+            database.execSQL("INSERT INTO task_counter (name, value) " + CounterDao.REAL_COUNTS_QUERY);
+            createCounterTriggers(database);
+        }
+    };
+
+    // fresh installs : Room creates the declared tables, raw sql extras are added here
+    static final Callback CREATE_CALLBACK = new Callback() {
+        @Override
+        public void onCreate(SupportSQLiteDatabase database) {
+            createPartialIndices(database);
+            createCounterTriggers(database);
+        }
+    };
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Partial indices can't be declared with @Index : list queries use the live one,
+     * so tombstones don't weigh on them, tombstone compaction uses the other one
+     * -----------------------------------------------------------------------------
+     */
+    private static void createPartialIndices(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE INDEX IF NOT EXISTS index_task_live "
+                + "ON task (priority, sort_rank) WHERE deleted_at IS NULL AND parent_id IS NULL");
+        database.execSQL("CREATE INDEX IF NOT EXISTS index_task_tombstone "
+                + "ON task (deleted_at) WHERE deleted_at IS NOT NULL");
+    }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Triggers keeping task_counter, see TaskCounter : they run in the transaction
+     * of every write on task, whatever the path (dao, sync, archive, purge).
+     * No conflict clause inside : the OR ABORT of Room's updates would override it
+     * -----------------------------------------------------------------------------
+     */
+    private static void createCounterTriggers(SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS task_counter_insert AFTER INSERT ON task "
+                + "BEGIN " + countRow("NEW", 1) + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS task_counter_delete AFTER DELETE ON task "
+                + "BEGIN " + countRow("OLD", -1) + "END");
+        // a row changing counters leaves the old ones and joins the new ones
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS task_counter_update "
+                + "AFTER UPDATE OF deleted_at, completed_at, parent_id, priority, updated_at ON task "
+                + "WHEN OLD.deleted_at IS NOT NEW.deleted_at OR OLD.completed_at IS NOT NEW.completed_at "
+                + "OR OLD.parent_id IS NOT NEW.parent_id OR OLD.priority IS NOT NEW.priority "
+                + "OR OLD.updated_at IS NOT NEW.updated_at "
+                + "BEGIN " + countRow("OLD", -1) + countRow("NEW", 1) + "END");
+    }
+
+    // trigger statements adding delta to the counters of the OLD or NEW row, if open
+    private static String countRow(String row, int delta) {
+        String open = row + ".deleted_at IS NULL AND " + row + ".completed_at IS NULL AND "
+                + row + ".parent_id IS NULL";
+        String[] names = {
+                "'" + TaskCounter.COUNTER_LIVE + "'",
+                "'" + TaskCounter.COUNTER_PRIORITY + "' || " + row + ".priority",
+                "'" + TaskCounter.COUNTER_DAY + "' || date(" + row + ".updated_at / 1000, 'unixepoch', 'localtime')"};
+        StringBuilder sql = new StringBuilder();
+        if (delta > 0) {
+            for (String name : names) {
+                sql.append("INSERT INTO task_counter (name, value) SELECT ").append(name).append(", 0 ")
+                        .append("WHERE ").append(open).append(" AND ").append(name)
+                        .append(" IS NOT NULL AND NOT EXISTS (SELECT 1 FROM task_counter WHERE name = ")
+                        .append(name).append("); ");
+            }
+        }
+        sql.append("UPDATE task_counter SET value = value + (").append(delta).append(") WHERE ")
+                .append(open).append(" AND name IN (")
+                .append(names[0]).append(", ").append(names[1]).append(", ").append(names[2]).append("); ");
+        return sql.toString();
+    }
+
 
     public static AppDatabase getsInstance(Context context){
         if(sInstance == null){
@@ -29,6 +260,11 @@ public abstract class AppDatabase extends RoomDatabase {
                 sInstance = Room.databaseBuilder(context.getApplicationContext(),
                         AppDatabase.class, AppDatabase.DATABASE_NAME)
                         //.allowMainThreadQueries()  // TEMPORARY FOR DEBUG !!!
+                        .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                                MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9,
+                                MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12,
+                                MIGRATION_12_13, MIGRATION_13_14)
+                        .addCallback(CREATE_CALLBACK)
                         .build();
             }
         }
@@ -39,7 +275,45 @@ public abstract class AppDatabase extends RoomDatabase {
         return sInstance;
     }
 
+    /**
+     * -----------------------------------------------------------------------------
+     * Instrumented tests : the whole process works on db instead of the app file,
+     * set before the activities start. Null goes back to the app file
+     * -----------------------------------------------------------------------------
+     */
+    @VisibleForTesting
+    public static void setTestInstance(@Nullable AppDatabase db) {
+        synchronized (LOCK) {
+            sInstance = db;
+        }
+        TaskRepository.resetInstance();
+    }
+
+    // in-memory db with the raw sql extras of a fresh install, see setTestInstance()
+    @VisibleForTesting
+    public static AppDatabase buildInMemory(Context context) {
+        return Room.inMemoryDatabaseBuilder(context.getApplicationContext(), AppDatabase.class)
+                .addCallback(CREATE_CALLBACK)
+                .build();
+    }
+
     public abstract TaskDao taskDao();
 
+    public abstract OutboxDao outboxDao();
+
+    public abstract ArchiveDao archiveDao();
+
+    public abstract ClosureDao closureDao();
+
+    public abstract TagDao tagDao();
+
+    public abstract RecurrenceDao recurrenceDao();
+
+    public abstract BodyDao bodyDao();
+
+    public abstract DraftDao draftDao();
+
+    public abstract CounterDao counterDao();
+
 
 }
@@ -0,0 +1,33 @@
+package com.example.android.todolist.database;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface ArchiveDao {
+
+    // archive browser, most recently completed first, on index_task_archive_completed_at
+    @Query("SELECT * FROM task_archive ORDER BY completed_at DESC LIMIT :limit")
+    LiveData<List<ArchivedTaskEntry>> loadArchivedTasks(int limit);
+
+    // archive job : old completed root tasks still in the hot table with their whole subtree,
+    // read with the archive shape
+    @Query("SELECT * FROM task WHERE id IN (SELECT descendant_id FROM task_closure WHERE ancestor_id IN "
+            + "(SELECT id FROM task WHERE completed_at < :completedBefore AND parent_id IS NULL "
+            + "AND deleted_at IS NULL LIMIT :limit))")
+    List<ArchivedTaskEntry> loadArchiveCandidates(long completedBefore, int limit);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertArchivedTasks(List<ArchivedTaskEntry> tasks);
+
+    @Query("SELECT * FROM task_archive WHERE uid = :uid")
+    ArchivedTaskEntry getArchivedTaskByUid(String uid);
+
+    @Query("DELETE FROM task_archive WHERE id = :id")
+    void deleteArchivedTask(int id);
+}
@@ -0,0 +1,24 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+
+import java.util.Date;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Cold storage for old completed tasks : same columns as the task table,
+ * moved here by TaskRepository.archiveCompleted() so the hot table stays small
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_archive", indices = {@Index(value = {"completed_at"}),
+        @Index(value = {"uid"}, unique = true)})
+public class ArchivedTaskEntry extends TaskEntry {
+
+    public ArchivedTaskEntry(int id, String description, int priority, Date updatedAt, Date dueAt,
+                             double rank, Date completedAt, Date deletedAt, String uid,
+                             Integer parentId) {
+        super(id, description, priority, updatedAt, dueAt, rank, completedAt, deletedAt, uid,
+                parentId);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface BodyDao {
+
+    @Query("SELECT * FROM task_body WHERE task_id = :taskId")
+    TaskBody getBody(int taskId);
+
+    // outbox drain : the full text is pushed, not the preview
+    @Query("SELECT * FROM task_body WHERE task_id IN (:taskIds)")
+    List<TaskBody> loadBodies(int[] taskIds);
+
+    // a task has a single body
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertBody(TaskBody body);
+
+    @Query("DELETE FROM task_body WHERE task_id = :taskId")
+    void deleteBody(int taskId);
+
+    // bodies of tasks physically removed, archived ones excepted
+    @Query("DELETE FROM task_body WHERE task_id IN (:taskIds)")
+    void deleteBodiesOfTasks(int[] taskIds);
+}
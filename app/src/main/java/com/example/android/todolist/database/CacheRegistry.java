@@ -0,0 +1,157 @@
+package com.example.android.todolist.database;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.MainThread;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Central list of the in-memory caches, trimmed by priority on the memory pressure signals
+ * (forwarded from the Application's onTrimMemory / onLowMemory) :
+ * - UI hidden                    : PRIORITY_LOW dropped
+ * - running moderate, background : PRIORITY_LOW dropped, PRIORITY_NORMAL halved
+ * - running low, moderate        : PRIORITY_LOW and PRIORITY_NORMAL dropped, PRIORITY_HIGH halved
+ * - running critical, complete   : all dropped
+ * A cache rebuilds itself lazily on its next use. Sizes are estimates, logged after each trim
+ * -------------------------------------------------------------------------------------------------
+ */
+public class CacheRegistry {
+
+    private static final String TAG = CacheRegistry.class.getSimpleName();
+
+    // order of dropping : cheap to rebuild first
+    public static final int PRIORITY_LOW    = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH   = 2;
+
+    // estimated heap size of a TaskEntry with a short description
+    public static final int TASK_ENTRY_BYTES = 200;
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * A cache that can give memory back
+     * ---------------------------------------------------------------------------------------------
+     */
+    public interface TrimmableCache {
+        // estimated heap bytes held
+        long estimateBytes();
+
+        // keep about keepFraction of the entries, 0 drops all
+        void trim(float keepFraction);
+    }
+
+    private static class Registration {
+        final String name;
+        final int priority;
+        final TrimmableCache cache;
+
+        Registration(String name, int priority, TrimmableCache cache) {
+            this.name = name;
+            this.priority = priority;
+            this.cache = cache;
+        }
+    }
+
+    // singleton instantion
+    private static final Object LOCK = new Object();
+    private static CacheRegistry sInstance;
+
+    private final CopyOnWriteArrayList<Registration> mCaches = new CopyOnWriteArrayList<>();
+
+    private CacheRegistry() {
+    }
+
+    public static CacheRegistry getInstance() {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new CacheRegistry();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Register a cache; caches owned by an activity must be unregistered in onDestroy()
+     * @param name     shown in the size report
+     * @param priority PRIORITY_LOW, PRIORITY_NORMAL or PRIORITY_HIGH
+     * ---------------------------------------------------------------------------------------------
+     */
+    public void register(String name, int priority, TrimmableCache cache) {
+        mCaches.add(new Registration(name, priority, cache));
+    }
+
+    public void unregister(TrimmableCache cache) {
+        for (Registration registration : mCaches) {
+            if (registration.cache == cache) {
+                mCaches.remove(registration);
+            }
+        }
+    }
+
+    @MainThread
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trim(0f, 0f, 0f);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trim(0f, 0f, 0.5f);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            trim(0f, 0.5f, 1f);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trim(0f, 1f, 1f);
+        } else {
+            return;
+        }
+        logReport("trim level " + level);
+    }
+
+    @MainThread
+    public void onLowMemory() {
+        trim(0f, 0f, 0f);
+        logReport("low memory");
+    }
+
+    // keep fractions by priority, lowest priority first
+    private void trim(float keepLow, float keepNormal, float keepHigh) {
+        float[] keep = {keepLow, keepNormal, keepHigh};
+        for (int priority = PRIORITY_LOW; priority <= PRIORITY_HIGH; priority++) {
+            if (keep[priority] >= 1f) {
+                continue;
+            }
+            for (Registration registration : mCaches) {
+                if (registration.priority == priority) {
+                    registration.cache.trim(keep[priority]);
+                }
+            }
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Log the estimated size of each cache and the heap use
+     * ---------------------------------------------------------------------------------------------
+     */
+    public void logReport(String reason) {
+        long total = 0;
+        StringBuilder report = new StringBuilder("Caches after ").append(reason).append(" :");
+        for (Registration registration : mCaches) {
+            long bytes = registration.cache.estimateBytes();
+            total += bytes;
+            report.append("\n  ").append(registration.name)
+                    .append(" (priority ").append(registration.priority).append(") ")
+                    .append(bytes / 1024).append(" KB");
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        report.append("\n  total ").append(total / 1024).append(" KB, heap ")
+                .append(heapUsed / 1024).append(" / ").append(runtime.maxMemory() / 1024).append(" KB");
+        Log.d(TAG, report.toString());
+    }
+}
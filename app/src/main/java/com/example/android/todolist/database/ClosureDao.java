@@ -0,0 +1,39 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface ClosureDao {
+
+    @Insert
+    void insertRows(List<TaskClosure> rows);
+
+    // path to the root of a task, used to link a new subtask
+    @Query("SELECT * FROM task_closure WHERE descendant_id = :id")
+    List<TaskClosure> loadAncestorRows(int id);
+
+    // tasks and all their descendants
+    @Query("SELECT descendant_id FROM task_closure WHERE ancestor_id IN (:ids)")
+    List<Integer> loadSubtreeIds(int[] ids);
+
+    // direct children, loaded when a node is expanded
+    @Query("SELECT task.* FROM task INNER JOIN task_closure ON task.id = task_closure.descendant_id "
+            + "WHERE task_closure.ancestor_id = :parentId AND task_closure.depth = 1 "
+            + "AND task.deleted_at IS NULL ORDER BY task.priority, task.sort_rank")
+    List<TaskEntry> loadChildren(int parentId);
+
+    @Query("SELECT COUNT(*) FROM task_closure INNER JOIN task ON task.id = task_closure.descendant_id "
+            + "WHERE task_closure.ancestor_id = :id AND task_closure.depth > 0 AND task.deleted_at IS NULL")
+    int countDescendants(int id);
+
+    // unlink rows physically removed from task
+    @Query("DELETE FROM task_closure WHERE descendant_id IN (:ids)")
+    void deleteRowsOfDescendants(int[] ids);
+
+    @Query("DELETE FROM task_closure WHERE ancestor_id IN (:ids)")
+    void deleteRowsOfAncestors(int[] ids);
+}
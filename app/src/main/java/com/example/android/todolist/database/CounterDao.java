@@ -0,0 +1,48 @@
+package com.example.android.todolist.database;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface CounterDao {
+
+    // tasks the counters count, see TaskCounter
+    String OPEN_TASK = "deleted_at IS NULL AND completed_at IS NULL AND parent_id IS NULL";
+
+    // the counters computed from task, as the triggers keep them : used to fill and check them
+    String REAL_COUNTS_QUERY = "SELECT '" + TaskCounter.COUNTER_LIVE + "' AS name, COUNT(*) AS value "
+            + "FROM task WHERE " + OPEN_TASK + " "
+            + "UNION ALL SELECT '" + TaskCounter.COUNTER_PRIORITY + "' || priority AS name, COUNT(*) AS value "
+            + "FROM task WHERE " + OPEN_TASK + " GROUP BY priority "
+            + "UNION ALL SELECT '" + TaskCounter.COUNTER_DAY + "' || date(updated_at / 1000, 'unixepoch', 'localtime') "
+            + "AS name, COUNT(*) AS value FROM task WHERE " + OPEN_TASK + " AND updated_at IS NOT NULL GROUP BY name";
+
+    // list header : a few primary key lookups, re-run when a task write touches the counters.
+    // today is bound by the caller, so a new day gives a new query
+    @Query("SELECT * FROM task_counter WHERE name IN ('" + TaskCounter.COUNTER_LIVE + "', "
+            + "'" + TaskCounter.COUNTER_PRIORITY + "1', '" + TaskCounter.COUNTER_PRIORITY + "2', "
+            + "'" + TaskCounter.COUNTER_PRIORITY + "3', :todayCounter)")
+    LiveData<List<TaskCounter>> loadHeaderCounters(String todayCounter);
+
+    @Query("SELECT * FROM task_counter")
+    List<TaskCounter> getAllCounters();
+
+    // full scan of task : reconciliation only
+    @Query(REAL_COUNTS_QUERY)
+    List<TaskCounter> countFromTasks();
+
+    @Query("DELETE FROM task_counter")
+    void deleteAllCounters();
+
+    // day counters before today, never read again, and counters dropped to 0
+    @Query("DELETE FROM task_counter WHERE value = 0 "
+            + "OR (name > '" + TaskCounter.COUNTER_DAY + "' AND name < :todayCounter)")
+    int deleteStaleCounters(String todayCounter);
+
+    @Insert
+    void insertCounters(List<TaskCounter> counters);
+}
@@ -0,0 +1,24 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+@Dao
+public interface DraftDao {
+
+    @Query("SELECT * FROM task_draft WHERE task_id = :taskId")
+    TaskDraft getDraft(int taskId);
+
+    // a task has a single draft, each autosave replaces it
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertDraft(TaskDraft draft);
+
+    @Query("DELETE FROM task_draft WHERE task_id = :taskId")
+    void deleteDraft(int taskId);
+
+    // drafts of tasks physically removed
+    @Query("DELETE FROM task_draft WHERE task_id IN (:taskIds)")
+    void deleteDraftsOfTasks(int[] taskIds);
+}
@@ -0,0 +1,46 @@
+package com.example.android.todolist.database;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * One occurrence of a recurring task in a date window, with its state (0 if pending)
+ * -------------------------------------------------------------------------------------------------
+ */
+public class Occurrence {
+
+    private final int taskId;
+    private final long occursAt;
+    private final int state;
+    // current task row, attached when the window is read
+    private final TaskEntry task;
+
+    Occurrence(int taskId, long occursAt, int state, TaskEntry task) {
+        this.taskId = taskId;
+        this.occursAt = occursAt;
+        this.state = state;
+        this.task = task;
+    }
+
+    Occurrence withTask(TaskEntry task) {
+        return new Occurrence(taskId, occursAt, state, task);
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public long getOccursAt() {
+        return occursAt;
+    }
+
+    public int getState() {
+        return state;
+    }
+
+    public boolean isCompleted() {
+        return state == OccurrenceState.STATE_COMPLETED;
+    }
+
+    public TaskEntry getTask() {
+        return task;
+    }
+}
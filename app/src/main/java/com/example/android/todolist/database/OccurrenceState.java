@@ -0,0 +1,44 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Persisted exception of a recurring task : an occurrence completed or skipped.
+ * Plain occurrences have no row
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_occurrence", primaryKeys = {"task_id", "occurs_at"},
+        indices = {@Index(value = {"occurs_at"})})
+public class OccurrenceState {
+
+    // Constants for the state
+    public static final int STATE_COMPLETED = 1;
+    public static final int STATE_SKIPPED   = 2;
+
+    @ColumnInfo(name = "task_id")
+    private int taskId;
+    @ColumnInfo(name = "occurs_at")
+    private long occursAt;
+    private int state;
+
+    public OccurrenceState(int taskId, long occursAt, int state) {
+        this.taskId = taskId;
+        this.occursAt = occursAt;
+        this.state = state;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public long getOccursAt() {
+        return occursAt;
+    }
+
+    public int getState() {
+        return state;
+    }
+}
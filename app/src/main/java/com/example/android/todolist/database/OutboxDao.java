@@ -0,0 +1,36 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface OutboxDao {
+
+    @Query("SELECT * FROM task_outbox WHERE task_id = :taskId")
+    OutboxEntry getEntry(int taskId);
+
+    // replace : a task has a single pending operation
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertEntry(OutboxEntry entry);
+
+    @Query("DELETE FROM task_outbox WHERE task_id = :taskId")
+    void deleteEntry(int taskId);
+
+    @Query("SELECT MAX(seq) FROM task_outbox")
+    Long getMaxSeq();
+
+    // drain in recording order
+    @Query("SELECT * FROM task_outbox WHERE seq > :afterSeq ORDER BY seq LIMIT :limit")
+    List<OutboxEntry> loadBatch(long afterSeq, int limit);
+
+    // acknowledge a pushed entry, unless the task has changed again in the meantime
+    @Query("DELETE FROM task_outbox WHERE task_id = :taskId AND seq = :seq")
+    void deleteIfUnchanged(int taskId, long seq);
+
+    @Query("SELECT COUNT(*) FROM task_outbox")
+    int countEntries();
+}
@@ -0,0 +1,60 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Pending local mutation of a task, waiting to be pushed by the sync.
+ * One row per task at most : the operations are coalesced when recorded, see TaskRepository
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_outbox", indices = {@Index(value = {"seq"})})
+public class OutboxEntry {
+
+    // Constants for op
+    public static final int OP_INSERT = 1;
+    public static final int OP_UPDATE = 2;
+    public static final int OP_DELETE = 3;
+
+    @PrimaryKey
+    @ColumnInfo(name = "task_id")
+    private int taskId;
+    // kept here too : the task row may be purged before the delete is pushed
+    private String uid;
+    private int op;
+    // increases at every recorded mutation : tells if the task changed while being pushed
+    private long seq;
+    @ColumnInfo(name = "queued_at")
+    private long queuedAt;
+
+    public OutboxEntry(int taskId, String uid, int op, long seq, long queuedAt) {
+        this.taskId = taskId;
+        this.uid = uid;
+        this.op = op;
+        this.seq = seq;
+        this.queuedAt = queuedAt;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public int getOp() {
+        return op;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface RecurrenceDao {
+
+    @Query("SELECT * FROM task_recurrence WHERE task_id = :taskId")
+    RecurrenceRule getRule(int taskId);
+
+    // a task has a single rule
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertRule(RecurrenceRule rule);
+
+    @Query("DELETE FROM task_recurrence WHERE task_id = :taskId")
+    void deleteRule(int taskId);
+
+    // rules that may have occurrences in a window, for live and not completed tasks.
+    // CROSS JOIN keeps task_recurrence as the outer loop : the planner would scan the pending tasks
+    @Query("SELECT task_recurrence.* FROM task_recurrence CROSS JOIN task ON task.id = task_recurrence.task_id "
+            + "WHERE task_recurrence.starts_at <= :to "
+            + "AND (task_recurrence.until_at IS NULL OR task_recurrence.until_at >= :from) "
+            + "AND task.deleted_at IS NULL AND task.completed_at IS NULL")
+    List<RecurrenceRule> loadActiveRules(long from, long to);
+
+    // exceptions of a window, on index_task_occurrence_occurs_at
+    @Query("SELECT * FROM task_occurrence WHERE occurs_at BETWEEN :from AND :to")
+    List<OccurrenceState> loadStates(long from, long to);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertState(OccurrenceState state);
+
+    @Query("DELETE FROM task_occurrence WHERE task_id = :taskId AND occurs_at = :occursAt")
+    void deleteState(int taskId, long occursAt);
+
+    // rows of tasks physically removed from task
+    @Query("DELETE FROM task_recurrence WHERE task_id IN (:taskIds)")
+    void deleteRulesOfTasks(int[] taskIds);
+
+    @Query("DELETE FROM task_occurrence WHERE task_id IN (:taskIds)")
+    void deleteStatesOfTasks(int[] taskIds);
+}
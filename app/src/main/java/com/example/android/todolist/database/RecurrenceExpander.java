@@ -0,0 +1,106 @@
+package com.example.android.todolist.database;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Occurrences of a RecurrenceRule in a date window. The first occurrence of the window is reached
+ * with a single calendar jump from the rule start, so the cost depends on the occurrences in the
+ * window, not on the age of the rule
+ * -------------------------------------------------------------------------------------------------
+ */
+final class RecurrenceExpander {
+
+    private static final long DAY_MS  = TimeUnit.DAYS.toMillis(1);
+    private static final long WEEK_MS = 7 * DAY_MS;
+    // longest month : the jump never goes past the window start
+    private static final long MONTH_MS = 31 * DAY_MS;
+
+    private RecurrenceExpander() {
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Add to out the occurrence times of a rule between from and to (both included), in order
+     * ---------------------------------------------------------------------------------------------
+     */
+    static void expand(RecurrenceRule rule, long from, long to, List<Long> out) {
+        long start = rule.getStartsAt();
+        long end = rule.getUntilAt() == null ? to : Math.min(to, rule.getUntilAt());
+        from = Math.max(from, start);
+        if (end < from) {
+            return;
+        }
+
+        int every = Math.max(1, rule.getEvery());
+        if (rule.getUnit() == RecurrenceRule.UNIT_WEEK && rule.getWeekdays() != 0) {
+            expandWeekdays(rule, every, from, end, out);
+            return;
+        }
+
+        int field;
+        long period;
+        switch (rule.getUnit()) {
+            case RecurrenceRule.UNIT_WEEK:
+                field = Calendar.WEEK_OF_YEAR;
+                period = WEEK_MS;
+                break;
+            case RecurrenceRule.UNIT_MONTH:
+                field = Calendar.MONTH;
+                period = MONTH_MS;
+                break;
+            default:
+                field = Calendar.DAY_OF_YEAR;
+                period = DAY_MS;
+                break;
+        }
+
+        // estimate the index of the first occurrence, one period early for dst shifts
+        Calendar calendar = Calendar.getInstance();
+        int k = (int) Math.max(0, (from - start) / (period * every) - 1);
+        long time = occurrence(calendar, start, field, k * every);
+        while (time < from) {
+            time = occurrence(calendar, start, field, ++k * every);
+        }
+        while (time <= end) {
+            out.add(time);
+            time = occurrence(calendar, start, field, ++k * every);
+        }
+    }
+
+    // added to the start each time, so month ends don't drift (jan 31, feb 28, mar 31...)
+    private static long occurrence(Calendar calendar, long start, int field, int amount) {
+        calendar.setTimeInMillis(start);
+        calendar.add(field, amount);
+        return calendar.getTimeInMillis();
+    }
+
+    // weekly rule on several days : week by week, the days of the mask at the start time of day
+    private static void expandWeekdays(RecurrenceRule rule, int every, long from, long end, List<Long> out) {
+        long start = rule.getStartsAt();
+        Calendar calendar = Calendar.getInstance();
+        int k = (int) Math.max(0, (from - start) / (WEEK_MS * every) - 1);
+        while (true) {
+            calendar.setTimeInMillis(start);
+            calendar.add(Calendar.WEEK_OF_YEAR, k * every);
+            // back to the first day of that week
+            int offset = (calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek() + 7) % 7;
+            calendar.add(Calendar.DAY_OF_YEAR, -offset);
+
+            for (int day = 0; day < 7; day++) {
+                long time = calendar.getTimeInMillis();
+                if (time > end) {
+                    return;
+                }
+                int bit = 1 << (calendar.get(Calendar.DAY_OF_WEEK) - 1);
+                if (time >= from && (rule.getWeekdays() & bit) != 0) {
+                    out.add(time);
+                }
+                calendar.add(Calendar.DAY_OF_YEAR, 1);
+            }
+            k++;
+        }
+    }
+}
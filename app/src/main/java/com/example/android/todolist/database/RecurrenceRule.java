@@ -0,0 +1,77 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Repeat rule of a task : only the rule is stored, its occurrences are computed on demand
+ * for a date window by RecurrenceExpander. Completed/skipped occurrences are in task_occurrence
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_recurrence", indices = {@Index(value = {"starts_at"})})
+public class RecurrenceRule {
+
+    // Constants for the repeat unit
+    public static final int UNIT_DAY   = 1;
+    public static final int UNIT_WEEK  = 2;
+    public static final int UNIT_MONTH = 3;
+
+    @PrimaryKey
+    @ColumnInfo(name = "task_id")
+    private int taskId;
+    private int unit;
+    // repeat every n units
+    private int every;
+    // weekly rules : days of the week, bit (Calendar.DAY_OF_WEEK - 1); 0 for the start day only
+    private int weekdays;
+    // first occurrence, usually the task due date
+    @ColumnInfo(name = "starts_at")
+    private long startsAt;
+    // last possible occurrence, null for no end
+    @ColumnInfo(name = "until_at")
+    private Long untilAt;
+
+    public RecurrenceRule(int taskId, int unit, int every, int weekdays, long startsAt, Long untilAt) {
+        this.taskId = taskId;
+        this.unit = unit;
+        this.every = every;
+        this.weekdays = weekdays;
+        this.startsAt = startsAt;
+        this.untilAt = untilAt;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(int taskId) {
+        this.taskId = taskId;
+    }
+
+    public int getUnit() {
+        return unit;
+    }
+
+    public int getEvery() {
+        return every;
+    }
+
+    public int getWeekdays() {
+        return weekdays;
+    }
+
+    public long getStartsAt() {
+        return startsAt;
+    }
+
+    public void setStartsAt(long startsAt) {
+        this.startsAt = startsAt;
+    }
+
+    public Long getUntilAt() {
+        return untilAt;
+    }
+}
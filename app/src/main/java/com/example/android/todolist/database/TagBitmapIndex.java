@@ -0,0 +1,104 @@
+package com.example.android.todolist.database;
+
+import android.util.SparseArray;
+
+import java.util.List;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * In-memory index of the task_tag table : one TaskBitmap of task ids per tag.
+ * Built once from the db, then kept up to date by TaskRepository on each tag write,
+ * so any/all tag filters are bitmap operations instead of joins re-run on every tap.
+ * Written from diskIO(), read from the main thread. Registered in the CacheRegistry :
+ * a partial index is of no use, so it stays whole until dropped, then loadTagIndex() reloads it
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TagBitmapIndex implements CacheRegistry.TrimmableCache {
+
+    private final SparseArray<TaskBitmap> mBitmaps = new SparseArray<>();
+    private boolean mLoaded = false;
+
+    TagBitmapIndex() {
+    }
+
+    public synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    synchronized void load(List<TaskTag> rows) {
+        mBitmaps.clear();
+        for (TaskTag row : rows) {
+            bitmapOf(row.getTagId()).add(row.getTaskId());
+        }
+        mLoaded = true;
+    }
+
+    synchronized void onTaskTagsChanged(int taskId, int[] addedTagIds, int[] removedTagIds) {
+        for (int tagId : addedTagIds) {
+            bitmapOf(tagId).add(taskId);
+        }
+        for (int tagId : removedTagIds) {
+            TaskBitmap bitmap = mBitmaps.get(tagId);
+            if (bitmap != null) {
+                bitmap.remove(taskId);
+            }
+        }
+    }
+
+    synchronized void onTasksRemoved(int[] taskIds) {
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            TaskBitmap bitmap = mBitmaps.valueAt(i);
+            for (int taskId : taskIds) {
+                bitmap.remove(taskId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized long estimateBytes() {
+        long bytes = 0;
+        for (int i = 0; i < mBitmaps.size(); i++) {
+            bytes += mBitmaps.valueAt(i).estimateBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized void trim(float keepFraction) {
+        if (keepFraction == 0f) {
+            mBitmaps.clear();
+            mLoaded = false;
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Tasks having all (AND) or any (OR) of the tags
+     * @return a snapshot, safe to keep while the index changes
+     * ---------------------------------------------------------------------------------------------
+     */
+    public synchronized TaskBitmap match(int[] tagIds, boolean matchAll) {
+        TaskBitmap result = null;
+        for (int tagId : tagIds) {
+            TaskBitmap bitmap = mBitmaps.get(tagId);
+            if (bitmap == null) {
+                bitmap = new TaskBitmap();
+            }
+            if (result == null) {
+                result = bitmap.copy();
+            } else {
+                result = matchAll ? result.and(bitmap) : result.or(bitmap);
+            }
+        }
+        return result == null ? new TaskBitmap() : result;
+    }
+
+    private TaskBitmap bitmapOf(int tagId) {
+        TaskBitmap bitmap = mBitmaps.get(tagId);
+        if (bitmap == null) {
+            bitmap = new TaskBitmap();
+            mBitmaps.put(tagId, bitmap);
+        }
+        return bitmap;
+    }
+}
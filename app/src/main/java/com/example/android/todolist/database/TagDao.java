@@ -0,0 +1,42 @@
+package com.example.android.todolist.database;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.persistence.room.Dao;
+import android.arch.persistence.room.Insert;
+import android.arch.persistence.room.OnConflictStrategy;
+import android.arch.persistence.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface TagDao {
+
+    @Query("SELECT * FROM tag ORDER BY name")
+    LiveData<List<TagEntry>> loadAllTags();
+
+    @Query("SELECT * FROM tag ORDER BY name")
+    List<TagEntry> getAllTags();
+
+    @Query("SELECT id FROM tag WHERE name = :name")
+    Integer getTagId(String name);
+
+    @Insert
+    long insertTag(TagEntry tag);
+
+    @Query("SELECT tag_id FROM task_tag WHERE task_id = :taskId")
+    List<Integer> loadTagIdsOfTask(int taskId);
+
+    // whole join table : builds the in-memory TagBitmapIndex, once per process
+    @Query("SELECT * FROM task_tag")
+    List<TaskTag> loadAllTaskTags();
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertTaskTags(List<TaskTag> rows);
+
+    @Query("DELETE FROM task_tag WHERE task_id = :taskId AND tag_id IN (:tagIds)")
+    void deleteTaskTags(int taskId, int[] tagIds);
+
+    // links of tasks physically removed from task
+    @Query("DELETE FROM task_tag WHERE task_id IN (:taskIds)")
+    void deleteTagsOfTasks(int[] taskIds);
+}
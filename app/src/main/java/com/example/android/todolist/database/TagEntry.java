@@ -0,0 +1,45 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * A tag, attached to tasks through task_tag
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "tag", indices = {@Index(value = {"name"}, unique = true)})
+public class TagEntry {
+
+    @PrimaryKey(autoGenerate = true)
+    private int id;
+    private String name;
+
+    @Ignore
+    public TagEntry(String name) {
+        this.name = name;
+    }
+
+    public TagEntry(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.todolist.database;
+
+import java.util.Arrays;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Compressed set of task ids : only the non-empty 64-bit words are stored, sorted by word index.
+ * Dense ranges cost 1 bit per id, sparse ones a word each; and()/or() merge the word lists
+ * without touching the empty ranges
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TaskBitmap {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    // word index (id >>> 6) of each stored word, sorted
+    private int[] mKeys;
+    private long[] mWords;
+    private int mSize;
+
+    public TaskBitmap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private TaskBitmap(int capacity) {
+        mKeys = new int[Math.max(capacity, 1)];
+        mWords = new long[mKeys.length];
+    }
+
+    public void add(int id) {
+        int key = id >>> 6;
+        int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+        if (i >= 0) {
+            mWords[i] |= 1L << id;
+        } else {
+            insertAt(~i, key, 1L << id);
+        }
+    }
+
+    public void remove(int id) {
+        int i = Arrays.binarySearch(mKeys, 0, mSize, id >>> 6);
+        if (i < 0) {
+            return;
+        }
+        mWords[i] &= ~(1L << id);
+        if (mWords[i] == 0) {
+            System.arraycopy(mKeys, i + 1, mKeys, i, mSize - i - 1);
+            System.arraycopy(mWords, i + 1, mWords, i, mSize - i - 1);
+            mSize--;
+        }
+    }
+
+    public boolean contains(int id) {
+        int i = Arrays.binarySearch(mKeys, 0, mSize, id >>> 6);
+        return i >= 0 && (mWords[i] & (1L << id)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    // heap held by the arrays and the object
+    long estimateBytes() {
+        return 48 + mKeys.length * 4L + mWords.length * 8L;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (int i = 0; i < mSize; i++) {
+            count += Long.bitCount(mWords[i]);
+        }
+        return count;
+    }
+
+    public TaskBitmap copy() {
+        TaskBitmap copy = new TaskBitmap(mSize);
+        System.arraycopy(mKeys, 0, copy.mKeys, 0, mSize);
+        System.arraycopy(mWords, 0, copy.mWords, 0, mSize);
+        copy.mSize = mSize;
+        return copy;
+    }
+
+    // ids in both sets, as a new bitmap
+    public TaskBitmap and(TaskBitmap other) {
+        TaskBitmap result = new TaskBitmap(Math.min(mSize, other.mSize));
+        int i = 0;
+        int j = 0;
+        while (i < mSize && j < other.mSize) {
+            if (mKeys[i] < other.mKeys[j]) {
+                i++;
+            } else if (mKeys[i] > other.mKeys[j]) {
+                j++;
+            } else {
+                long word = mWords[i] & other.mWords[j];
+                if (word != 0) {
+                    result.append(mKeys[i], word);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // ids in either set, as a new bitmap
+    public TaskBitmap or(TaskBitmap other) {
+        TaskBitmap result = new TaskBitmap(mSize + other.mSize);
+        int i = 0;
+        int j = 0;
+        while (i < mSize || j < other.mSize) {
+            if (j == other.mSize || (i < mSize && mKeys[i] < other.mKeys[j])) {
+                result.append(mKeys[i], mWords[i]);
+                i++;
+            } else if (i == mSize || mKeys[i] > other.mKeys[j]) {
+                result.append(other.mKeys[j], other.mWords[j]);
+                j++;
+            } else {
+                result.append(mKeys[i], mWords[i] | other.mWords[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // words are appended in key order by and()/or()
+    private void append(int key, long word) {
+        insertAt(mSize, key, word);
+    }
+
+    private void insertAt(int index, int key, long word) {
+        if (mSize == mKeys.length) {
+            int capacity = mSize * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mWords = Arrays.copyOf(mWords, capacity);
+        }
+        System.arraycopy(mKeys, index, mKeys, index + 1, mSize - index);
+        System.arraycopy(mWords, index, mWords, index + 1, mSize - index);
+        mKeys[index] = key;
+        mWords[index] = word;
+        mSize++;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Full text of a long description, out of the task row : the row keeps a short preview,
+ * so the list queries never carry the long notes. Kept for the archived tasks too (same id).
+ * Encoded by TaskBodyCodec
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_body")
+public class TaskBody {
+
+    // Constants for encoding
+    public static final int ENCODING_UTF8    = 0;
+    public static final int ENCODING_DEFLATE = 1;
+
+    @PrimaryKey
+    @ColumnInfo(name = "task_id")
+    private int taskId;
+    private int encoding;
+    private byte[] content;
+
+    public TaskBody(int taskId, int encoding, byte[] content) {
+        this.taskId = taskId;
+        this.encoding = encoding;
+        this.content = content;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.todolist.database;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Split of the descriptions between the task row and task_body :
+ * up to PREVIEW_LENGTH chars the text stays in the row, longer ones go to a body and the row
+ * keeps the first PREVIEW_LENGTH chars and an ellipsis. Bodies over COMPRESS_THRESHOLD bytes
+ * are deflated, when that makes them smaller
+ * -------------------------------------------------------------------------------------------------
+ */
+final class TaskBodyCodec {
+
+    // chars kept in the task row
+    static final int PREVIEW_LENGTH = 160;
+    // utf-8 bytes over which a body is deflated
+    private static final int COMPRESS_THRESHOLD = 512;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ELLIPSIS = "\u2026";
+
+    private TaskBodyCodec() {
+    }
+
+    static boolean needsBody(String description) {
+        return description != null && description.length() > PREVIEW_LENGTH;
+    }
+
+    // start of the text for the row, not cut inside a surrogate pair
+    static String previewOf(String description) {
+        if (!needsBody(description)) {
+            return description;
+        }
+        int end = PREVIEW_LENGTH;
+        if (Character.isHighSurrogate(description.charAt(end - 1))) {
+            end--;
+        }
+        return description.substring(0, end) + ELLIPSIS;
+    }
+
+    static TaskBody encode(int taskId, String description) {
+        byte[] utf8 = description.getBytes(UTF_8);
+        if (utf8.length > COMPRESS_THRESHOLD) {
+            byte[] deflated = deflate(utf8);
+            if (deflated.length < utf8.length) {
+                return new TaskBody(taskId, TaskBody.ENCODING_DEFLATE, deflated);
+            }
+        }
+        return new TaskBody(taskId, TaskBody.ENCODING_UTF8, utf8);
+    }
+
+    static String decode(TaskBody body) {
+        byte[] utf8 = body.getEncoding() == TaskBody.ENCODING_DEFLATE
+                ? inflate(body.getContent())
+                : body.getContent();
+        return new String(utf8, UTF_8);
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated task body");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted task body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
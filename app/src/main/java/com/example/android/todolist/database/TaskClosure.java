@@ -0,0 +1,41 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Closure table of the subtasks tree : one row for every (ancestor, descendant) couple,
+ * self included with depth 0. Subtree reads/updates become a single indexed query.
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_closure", primaryKeys = {"ancestor_id", "descendant_id"},
+        indices = {@Index(value = {"descendant_id"})})
+public class TaskClosure {
+
+    @ColumnInfo(name = "ancestor_id")
+    private int ancestorId;
+    @ColumnInfo(name = "descendant_id")
+    private int descendantId;
+    // levels between the two tasks, 1 for a direct child
+    private int depth;
+
+    public TaskClosure(int ancestorId, int descendantId, int depth) {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+        this.depth = depth;
+    }
+
+    public int getAncestorId() {
+        return ancestorId;
+    }
+
+    public int getDescendantId() {
+        return descendantId;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
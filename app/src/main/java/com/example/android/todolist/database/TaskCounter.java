@@ -0,0 +1,52 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Cached count of the open tasks of the list : not deleted, not completed, not a subtask.
+ * Kept by sqlite triggers on task in the transaction of each write,
+ * see AppDatabase.createCounterTriggers(). Counters :
+ * - COUNTER_LIVE                  : all the open tasks
+ * - COUNTER_PRIORITY + priority   : open tasks of a priority
+ * - COUNTER_DAY + yyyy-MM-dd      : open tasks last updated that local day,
+ *                                   the days before today are pruned by TaskRepository.reconcileCounters()
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_counter")
+public class TaskCounter {
+
+    public static final String COUNTER_LIVE     = "live";
+    public static final String COUNTER_PRIORITY = "priority_";
+    public static final String COUNTER_DAY      = "day_";
+
+    @PrimaryKey
+    @NonNull
+    private String name;
+    private int value;
+
+    public TaskCounter(@NonNull String name, int value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    // counter of the local day of a time, named as date(..., 'localtime') does in the triggers
+    public static String dayCounter(long millis) {
+        return COUNTER_DAY + new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date(millis));
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    public int getValue() {
+        return value;
+    }
+}
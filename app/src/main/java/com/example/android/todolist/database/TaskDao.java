@@ -1,6 +1,5 @@
 package com.example.android.todolist.database;
 
-import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.LiveData;
 import android.arch.persistence.room.Dao;
 import android.arch.persistence.room.Delete;
@@ -9,26 +8,115 @@ import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
 import android.arch.persistence.room.Update;
 
+import java.util.Date;
 import java.util.List;
 
 @Dao
 public interface TaskDao {
 
-    @Query("SELECT * FROM task ORDER BY priority")
+    // live root tasks only : served by the partial index index_task_live,
+    // subtasks are loaded on demand with ClosureDao.loadChildren()
+    @Query("SELECT * FROM task WHERE deleted_at IS NULL AND parent_id IS NULL ORDER BY priority, sort_rank")
     LiveData<List<TaskEntry>> loadAllTasks();
 
     @Insert
-    void insertTask(TaskEntry taskEntry);
+    long insertTask(TaskEntry taskEntry);
 
 
     @Update(onConflict = OnConflictStrategy.REPLACE)
     void updateTask(TaskEntry taskEntry);
 
 
+    // targeted updates : touch only the changed columns, see TaskRepository.saveChanges()
+    @Query("UPDATE task SET description = :description, updated_at = :updatedAt WHERE id = :id")
+    void updateDescription(int id, String description, Date updatedAt);
+
+    // a task changing priority goes to the bottom of the new one
+    @Query("UPDATE task SET priority = :priority, sort_rank = :rank, updated_at = :updatedAt WHERE id = :id")
+    void updatePriority(int id, int priority, double rank, Date updatedAt);
+
+    @Query("UPDATE task SET due_at = :dueAt, updated_at = :updatedAt WHERE id = :id")
+    void updateDueAt(int id, Date dueAt, Date updatedAt);
+
+
+    // manual ordering, see TaskRepository.moveTask()
+    @Query("SELECT MAX(sort_rank) FROM task WHERE priority = :priority")
+    Double getMaxRank(int priority);
+
+    @Query("UPDATE task SET sort_rank = :rank WHERE id = :id")
+    void updateRank(int id, double rank);
+
+    @Query("SELECT id FROM task WHERE priority = :priority ORDER BY sort_rank, id")
+    List<Integer> loadIdsByRank(int priority);
+
+
+    // bulk actions on the selected tasks, see TaskRepository : ids are at most
+    // TaskRepository.MAX_BATCH_IDS to stay below the sqlite bound variables limit
+    // tasks and their subtrees
+    @Query("UPDATE task SET deleted_at = :deletedAt WHERE deleted_at IS NULL AND id IN "
+            + "(SELECT descendant_id FROM task_closure WHERE ancestor_id IN (:ids))")
+    void softDeleteTasks(int[] ids, Date deletedAt);
+
+    // tasks and their subtrees
+    @Query("UPDATE task SET completed_at = :completedAt, updated_at = :completedAt "
+            + "WHERE completed_at IS NULL AND id IN "
+            + "(SELECT descendant_id FROM task_closure WHERE ancestor_id IN (:ids))")
+    void completeTasks(int[] ids, Date completedAt);
+
+
+    // soft delete : tombstone set/cleared with a single-column update, on the whole subtree
+    @Query("UPDATE task SET deleted_at = :deletedAt WHERE deleted_at IS NULL AND id IN "
+            + "(SELECT descendant_id FROM task_closure WHERE ancestor_id = :id)")
+    void softDeleteTask(int id, Date deletedAt);
+
+    // subtasks deleted earlier on their own stay deleted
+    @Query("UPDATE task SET deleted_at = NULL WHERE id IN "
+            + "(SELECT descendant_id FROM task_closure WHERE ancestor_id = :id) "
+            + "AND deleted_at = (SELECT deleted_at FROM task WHERE id = :id)")
+    void restoreTask(int id);
+
+    // a batch of expired tombstones to purge, on index_task_tombstone
+    @Query("SELECT id FROM task WHERE deleted_at IS NOT NULL AND deleted_at < :before LIMIT :limit")
+    List<Integer> loadExpiredTombstoneIds(long before, int limit);
+
+
+    // outbox drain : current state of the tasks to push
+    @Query("SELECT * FROM task WHERE id IN (:ids)")
+    List<TaskEntry> loadTasksByIds(int[] ids);
+
+    @Query("SELECT uid FROM task WHERE id = :id")
+    String getTaskUid(int id);
+
+    // physical delete, for rows moved to the archive
+    @Query("DELETE FROM task WHERE id IN (:ids)")
+    void removeTasks(int[] ids);
+
+    @Query("SELECT * FROM task WHERE uid = :uid")
+    TaskEntry getTaskByUid(String uid);
+
+
     @Delete
     void deleteTask(TaskEntry taskEntry);
 
     @Query("SELECT * FROM task WHERE id = :id" )
     LiveData<TaskEntry> loadTaskById(int id);
 
+    @Query("SELECT * FROM task WHERE id = :id" )
+    TaskEntry getTaskById(int id);
+
+    // next reminders strictly after a time, range scan on index_task_due_at :
+    // unary + keeps the planner off index_task_completed_at and its temp b-tree sort
+    @Query("SELECT id, due_at FROM task WHERE due_at > :after AND +completed_at IS NULL "
+            + "AND deleted_at IS NULL ORDER BY due_at, id LIMIT :limit")
+    List<TaskReminder> loadRemindersAfter(long after, int limit);
+
+    // reminders fallen in (after, upTo], used when the alarm fires : the first ones, then the count
+    @Query("SELECT * FROM task WHERE due_at > :after AND due_at <= :upTo AND +completed_at IS NULL "
+            + "AND deleted_at IS NULL ORDER BY due_at, id LIMIT :limit")
+    List<TaskEntry> loadTasksDueBetween(long after, long upTo, int limit);
+
+    @Query("SELECT COUNT(*) FROM task WHERE due_at > :after AND due_at <= :upTo AND +completed_at IS NULL "
+            + "AND deleted_at IS NULL")
+    int countTasksDueBetween(long after, long upTo);
+
 }
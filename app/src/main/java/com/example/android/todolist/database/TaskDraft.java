@@ -0,0 +1,73 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Unsaved edits of the task editor, autosaved while typing and restored when it is reopened.
+ * One row per edited task : the task id, 0 for a new task, minus the parent id for a new subtask.
+ * Kept apart from task so the autosave never refreshes the task list
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_draft")
+public class TaskDraft {
+
+    // key of the draft of a new root task
+    public static final int NEW_TASK_KEY = 0;
+
+    @PrimaryKey
+    @ColumnInfo(name = "task_id")
+    private int taskId;
+    private String description;
+    private int priority;
+    @ColumnInfo(name = "due_at")
+    private Long dueAt;
+    @ColumnInfo(name = "saved_at")
+    private long savedAt;
+
+    public TaskDraft(int taskId, String description, int priority, Long dueAt, long savedAt) {
+        this.taskId = taskId;
+        this.description = description;
+        this.priority = priority;
+        this.dueAt = dueAt;
+        this.savedAt = savedAt;
+    }
+
+    public static int newSubtaskKey(int parentId) {
+        return -parentId;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public Long getDueAt() {
+        return dueAt;
+    }
+
+    public long getSavedAt() {
+        return savedAt;
+    }
+
+    // nothing worth restoring
+    public boolean isBlank() {
+        return (description == null || description.trim().isEmpty()) && dueAt == null;
+    }
+
+    // same edits, whatever the save time
+    public boolean hasSameContent(TaskDraft other) {
+        return other != null && taskId == other.taskId && priority == other.priority
+                && (description == null ? other.description == null : description.equals(other.description))
+                && (dueAt == null ? other.dueAt == null : dueAt.equals(other.dueAt));
+    }
+}
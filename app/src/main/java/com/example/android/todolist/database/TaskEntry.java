@@ -7,33 +7,77 @@ import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Entity;
 import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
 
-@Entity (tableName = "task")
+@Entity (tableName = "task", indices = {@Index(value = {"due_at"}),
+        @Index(value = {"priority", "sort_rank"}),
+        @Index(value = {"uid"}, unique = true),
+        @Index(value = {"completed_at"})})
 public class TaskEntry {
 
+    // Flags for the fields changed through the setters, see getDirtyFields()
+    public static final int FIELD_DESCRIPTION = 1;
+    public static final int FIELD_PRIORITY    = 1 << 1;
+    public static final int FIELD_DUE_AT      = 1 << 2;
+
     @PrimaryKey(autoGenerate = true)
     private int id;
     private String description;
     private int priority;
     @ColumnInfo(name = "updated_at")
     private Date updatedAt;
+    // reminder time, null when the task has no due date
+    @ColumnInfo(name = "due_at")
+    private Date dueAt;
+
+    // manual order inside a priority : fractional key, a move rewrites only the moved row
+    @ColumnInfo(name = "sort_rank")
+    private double rank;
+
+    // completion time, null while the task is still open
+    @ColumnInfo(name = "completed_at")
+    private Date completedAt;
+
+    // tombstone : swipe-deleted tasks are hidden until purged, null for live tasks
+    @ColumnInfo(name = "deleted_at")
+    private Date deletedAt;
+
+    // parent task for subtasks, null for the roots; the whole tree is in task_closure
+    @ColumnInfo(name = "parent_id")
+    private Integer parentId;
+
+    // global id shared with the sync server, the local id is device specific
+    private String uid;
 
+    // fields modified since loaded from db, not persisted
     @Ignore
-    public TaskEntry(String description, int priority, Date updatedAt) {
+    private int dirtyFields;
+
+    @Ignore
+    public TaskEntry(String description, int priority, Date updatedAt, Date dueAt) {
         this.description = description;
         this.priority = priority;
         this.updatedAt = updatedAt;
+        this.dueAt = dueAt;
     }
 
-    public TaskEntry(int id, String description, int priority, Date updatedAt) {
+    public TaskEntry(int id, String description, int priority, Date updatedAt, Date dueAt,
+                     double rank, Date completedAt, Date deletedAt, String uid,
+                     Integer parentId) {
         this.id = id;
         this.description = description;
         this.priority = priority;
 
         this.updatedAt = updatedAt;
+        this.dueAt = dueAt;
+        this.rank = rank;
+        this.completedAt = completedAt;
+        this.deletedAt = deletedAt;
+        this.uid = uid;
+        this.parentId = parentId;
     }
 
     public int getId() {
@@ -49,6 +93,9 @@ public class TaskEntry {
     }
 
     public void setDescription(String description) {
+        if (!equalsNullable(this.description, description)) {
+            dirtyFields |= FIELD_DESCRIPTION;
+        }
         this.description = description;
     }
 
@@ -57,6 +104,9 @@ public class TaskEntry {
     }
 
     public void setPriority(int priority) {
+        if (this.priority != priority) {
+            dirtyFields |= FIELD_PRIORITY;
+        }
         this.priority = priority;
     }
 
@@ -67,4 +117,85 @@ public class TaskEntry {
     public void setUpdatedAt(Date updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Date getDueAt() {
+        return dueAt;
+    }
+
+    public void setDueAt(Date dueAt) {
+        if (!equalsNullable(this.dueAt, dueAt)) {
+            dirtyFields |= FIELD_DUE_AT;
+        }
+        this.dueAt = dueAt;
+    }
+
+    public double getRank() {
+        return rank;
+    }
+
+    public void setRank(double rank) {
+        this.rank = rank;
+    }
+
+    public Date getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(Date completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public boolean isCompleted() {
+        return completedAt != null;
+    }
+
+    public Date getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(Date deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public void setUid(String uid) {
+        this.uid = uid;
+    }
+
+    public Integer getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Integer parentId) {
+        this.parentId = parentId;
+    }
+
+    /**
+     * -----------------------------------------------------------------------------
+     * Dirty tracking : which fields have been changed by the setters, as FIELD_* flags
+     * -----------------------------------------------------------------------------
+     */
+    public int getDirtyFields() {
+        return dirtyFields;
+    }
+
+    public boolean isDirty() {
+        return dirtyFields != 0;
+    }
+
+    public boolean isFieldDirty(int field) {
+        return (dirtyFields & field) != 0;
+    }
+
+    // called once the changes have been written to db
+    public void clearDirty() {
+        dirtyFields = 0;
+    }
+
+    private static boolean equalsNullable(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
@@ -0,0 +1,29 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Light projection of a task used by the reminder queue : only id and due time are loaded
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TaskReminder implements Comparable<TaskReminder> {
+
+    public int id;
+
+    @ColumnInfo(name = "due_at")
+    public long dueAt;
+
+    public TaskReminder(int id, long dueAt) {
+        this.id = id;
+        this.dueAt = dueAt;
+    }
+
+    @Override
+    public int compareTo(TaskReminder other) {
+        if (dueAt != other.dueAt) {
+            return dueAt < other.dueAt ? -1 : 1;
+        }
+        return id < other.id ? -1 : (id == other.id ? 0 : 1);
+    }
+}
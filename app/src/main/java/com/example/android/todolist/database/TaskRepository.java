@@ -0,0 +1,1033 @@
+package com.example.android.todolist.database;
+
+import android.content.Context;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LongSparseArray;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.example.android.todolist.AppExecutors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Single entry point for the task writes : keeps the multi-statement changes
+ * in one db transaction. Every local mutation is recorded in the task_outbox
+ * in the same transaction, for the sync. Call from AppExecutors.diskIO()
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TaskRepository {
+
+    private static final String LOG_TAG = TaskRepository.class.getSimpleName();
+
+    // distance between consecutive ranks when appending or rebalancing
+    static final double RANK_GAP = 1024.0;
+    // below this distance a midpoint is not reliable anymore : renumber the priority
+    private static final double MIN_RANK_GAP = 1e-6;
+
+    // ids bound in a single IN (...) : sqlite allows 999 variables per statement
+    static final int MAX_BATCH_IDS = 500;
+
+    // tombstones purged per transaction by purgeTombstones()
+    private static final int PURGE_BATCH_SIZE = 200;
+
+    // tasks moved per transaction by archiveCompleted()
+    private static final int ARCHIVE_BATCH_SIZE = 200;
+
+    // recurring tasks are expanded by fixed windows, the last ones read are kept
+    static final long OCCURRENCE_WINDOW = TimeUnit.DAYS.toMillis(7);
+    private static final int OCCURRENCE_WINDOWS_CACHED = 8;
+    // estimated heap size of an expanded Occurrence
+    private static final int OCCURRENCE_BYTES = 48;
+
+    // singleton instantion
+    private static final Object LOCK = new Object();
+    private static TaskRepository sInstance;
+
+    private final AppDatabase mDb;
+
+    // task ids per tag, loaded by loadTagIndex()
+    private final TagBitmapIndex mTagIndex = new TagBitmapIndex();
+
+    // expanded occurrences by window index, without the task rows
+    private final LruCache<Long, List<Occurrence>> mOccurrenceWindows =
+            new LruCache<>(OCCURRENCE_WINDOWS_CACHED);
+    private final CacheRegistry.TrimmableCache mOccurrenceCache;
+
+    private TaskRepository(AppDatabase db) {
+        mDb = db;
+
+        CacheRegistry registry = CacheRegistry.getInstance();
+        registry.register("tag index", CacheRegistry.PRIORITY_HIGH, mTagIndex);
+        mOccurrenceCache = new CacheRegistry.TrimmableCache() {
+            @Override
+            public long estimateBytes() {
+                long count = 0;
+                for (List<Occurrence> occurrences : mOccurrenceWindows.snapshot().values()) {
+                    count += occurrences.size();
+                }
+                return count * OCCURRENCE_BYTES;
+            }
+
+            // least recently read windows first, expanded again when asked
+            @Override
+            public void trim(float keepFraction) {
+                mOccurrenceWindows.trimToSize((int) (mOccurrenceWindows.size() * keepFraction));
+            }
+        };
+        registry.register("occurrence windows", CacheRegistry.PRIORITY_NORMAL, mOccurrenceCache);
+    }
+
+    public static TaskRepository getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (LOCK) {
+                if (sInstance == null) {
+                    sInstance = new TaskRepository(AppDatabase.getsInstance(context));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    // the db instance changed, see AppDatabase.setTestInstance() : next getInstance() uses the new one
+    @VisibleForTesting
+    static void resetInstance() {
+        synchronized (LOCK) {
+            if (sInstance != null) {
+                CacheRegistry.getInstance().unregister(sInstance.mTagIndex);
+                CacheRegistry.getInstance().unregister(sInstance.mOccurrenceCache);
+                sInstance = null;
+            }
+        }
+    }
+
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Insert a new task, linked in the task_closure tree under its parent if any
+     * @return the id of the new task
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public int insertTask(final TaskEntry task) {
+        final int[] newId = new int[1];
+        final String description = task.getDescription();
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                // new tasks go to the bottom of their priority
+                task.setRank(nextRank(task.getPriority()));
+                if (task.getUid() == null) {
+                    task.setUid(newUid());
+                }
+                task.setDescription(TaskBodyCodec.previewOf(description));
+                newId[0] = (int) mDb.taskDao().insertTask(task);
+                writeBody(newId[0], description);
+                linkInTree(newId[0], task.getParentId());
+                recordOp(newId[0], task.getUid(), OutboxEntry.OP_INSERT);
+            }
+        });
+        int id = newId[0];
+        task.setId(id);
+        task.setDescription(description);
+        task.clearDirty();
+        return id;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Write only the columns changed through the TaskEntry setters.
+     * Nothing is written (so no invalidation and list re-query) when the task is not dirty
+     * @return true if something has been written
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public boolean saveChanges(final TaskEntry task) {
+        if (!task.isDirty()) {
+            Log.d(LOG_TAG, "No changes for task " + task.getId() + ", skip update");
+            return false;
+        }
+
+        final Date now = new Date();
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                TaskDao dao = mDb.taskDao();
+                int id = task.getId();
+                if (task.isFieldDirty(TaskEntry.FIELD_DESCRIPTION)) {
+                    dao.updateDescription(id, TaskBodyCodec.previewOf(task.getDescription()), now);
+                    writeBody(id, task.getDescription());
+                }
+                if (task.isFieldDirty(TaskEntry.FIELD_PRIORITY)) {
+                    double rank = nextRank(task.getPriority());
+                    dao.updatePriority(id, task.getPriority(), rank, now);
+                    task.setRank(rank);
+                }
+                if (task.isFieldDirty(TaskEntry.FIELD_DUE_AT)) {
+                    dao.updateDueAt(id, task.getDueAt(), now);
+                }
+                recordOp(id, task.getUid(), OutboxEntry.OP_UPDATE);
+            }
+        });
+
+        task.setUpdatedAt(now);
+        task.clearDirty();
+        return true;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Persist a drag & drop : the moved task gets a rank between its new neighbours,
+     * so only its row is written. Neighbours of another priority or parent are ignored.
+     * @param moved  the dropped task
+     * @param before nearest task above it under the same parent, null if none
+     * @param after  nearest task below it under the same parent, null if none
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void moveTask(final TaskEntry moved, TaskEntry before, TaskEntry after) {
+        final int priority = moved.getPriority();
+        Double low  = isSibling(moved, before, priority) ? before.getRank() : null;
+        Double high = isSibling(moved, after, priority)  ? after.getRank()  : null;
+
+        double rank;
+        if (low == null && high == null) {
+            return;
+        } else if (low == null) {
+            rank = high - RANK_GAP;
+        } else if (high == null) {
+            rank = low + RANK_GAP;
+        } else {
+            rank = (low + high) / 2;
+        }
+
+        final double newRank = rank;
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                mDb.taskDao().updateRank(moved.getId(), newRank);
+                recordOp(moved.getId(), moved.getUid(), OutboxEntry.OP_UPDATE);
+            }
+        });
+        moved.setRank(rank);
+
+        // gaps ran out : spread the priority again, rare and queued behind the committed drop
+        if (low != null && high != null && high - low < MIN_RANK_GAP) {
+            AppExecutors.getInstance().diskIO().execute(new Runnable() {
+                @Override
+                public void run() {
+                    rebalance(priority);
+                }
+            });
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Renumber the ranks of a priority with RANK_GAP spacing, keeping the order
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void rebalance(final int priority) {
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                List<Integer> ids = mDb.taskDao().loadIdsByRank(priority);
+                for (int i = 0; i < ids.size(); i++) {
+                    mDb.taskDao().updateRank(ids.get(i), (i + 1) * RANK_GAP);
+                }
+                recordOps(toArray(ids), OutboxEntry.OP_UPDATE);
+                Log.d(LOG_TAG, "Rebalanced " + ids.size() + " ranks of priority " + priority);
+            }
+        });
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Soft delete of a task and its subtasks : the rows get a tombstone and disappear from
+     * the list, restoreTask() undoes it until purgeTombstones() removes them for good
+     * @return ids of the task and its subtasks, for the reminders
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public int[] deleteTask(final int id) {
+        final int[][] subtree = new int[1][];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                subtree[0] = subtreeIds(new int[]{id});
+                mDb.taskDao().softDeleteTask(id, new Date());
+                recordOps(subtree[0], OutboxEntry.OP_DELETE);
+            }
+        });
+        return subtree[0];
+    }
+
+    // @return ids of the task and its subtasks
+    @WorkerThread
+    public int[] restoreTask(final int id) {
+        final int[][] subtree = new int[1][];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                mDb.taskDao().restoreTask(id);
+                subtree[0] = subtreeIds(new int[]{id});
+                recordOps(subtree[0], OutboxEntry.OP_UPDATE);
+            }
+        });
+        return subtree[0];
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Put back the full description of a task read from the db, for editing :
+     * the row only holds a preview of the long ones, the body is decompressed here
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void loadFullDescription(TaskEntry task) {
+        TaskBody body = mDb.bodyDao().getBody(task.getId());
+        if (body != null) {
+            task.setDescription(TaskBodyCodec.decode(body));
+            // as read from the db : not an edit
+            task.clearDirty();
+        }
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Editor drafts, see TaskDraft : task_draft is watched by no LiveData,
+     * so the autosave writes don't re-query the task list
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public TaskDraft loadDraft(int key) {
+        return mDb.draftDao().getDraft(key);
+    }
+
+    @WorkerThread
+    public void saveDraft(TaskDraft draft) {
+        mDb.draftDao().upsertDraft(draft);
+    }
+
+    @WorkerThread
+    public void deleteDraft(int key) {
+        mDb.draftDao().deleteDraft(key);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Subtasks tree : direct children of a task, loaded when it is expanded in the list
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public List<TaskEntry> loadChildren(int parentId) {
+        return mDb.closureDao().loadChildren(parentId);
+    }
+
+    // live subtasks at any depth
+    @WorkerThread
+    public int countDescendants(int id) {
+        return mDb.closureDao().countDescendants(id);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Tags : created on the fly from the picker, a name is used once
+     * @return the id of the tag with this name
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public int createTag(final String name) {
+        final int[] tagId = new int[1];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                Integer existing = mDb.tagDao().getTagId(name);
+                tagId[0] = existing != null
+                        ? existing
+                        : (int) mDb.tagDao().insertTag(new TagEntry(name));
+            }
+        });
+        return tagId[0];
+    }
+
+    @WorkerThread
+    public List<TagEntry> loadTags() {
+        return mDb.tagDao().getAllTags();
+    }
+
+    @WorkerThread
+    public int[] loadTaskTagIds(int taskId) {
+        return toArray(mDb.tagDao().loadTagIdsOfTask(taskId));
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Replace the tags of a task : only the links added/removed are written,
+     * and applied to the bitmap index. Tags are local only, nothing is recorded for the sync
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void setTaskTags(final int taskId, int[] tagIds) {
+        SparseBooleanArray wanted = new SparseBooleanArray(tagIds.length);
+        for (int tagId : tagIds) {
+            wanted.put(tagId, true);
+        }
+        List<Integer> current = mDb.tagDao().loadTagIdsOfTask(taskId);
+
+        final List<TaskTag> added = new ArrayList<>();
+        final List<Integer> removed = new ArrayList<>();
+        for (Integer tagId : current) {
+            if (wanted.get(tagId)) {
+                wanted.delete(tagId);
+            } else {
+                removed.add(tagId);
+            }
+        }
+        for (int i = 0; i < wanted.size(); i++) {
+            added.add(new TaskTag(taskId, wanted.keyAt(i)));
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        final int[] removedIds = toArray(removed);
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                mDb.tagDao().insertTaskTags(added);
+                mDb.tagDao().deleteTaskTags(taskId, removedIds);
+            }
+        });
+
+        int[] addedIds = new int[added.size()];
+        for (int i = 0; i < addedIds.length; i++) {
+            addedIds[i] = added.get(i).getTagId();
+        }
+        mTagIndex.onTaskTagsChanged(taskId, addedIds, removedIds);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Index used by the tag filters : the first call reads the whole task_tag table,
+     * then it is kept up to date by the writes above
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public TagBitmapIndex loadTagIndex() {
+        if (!mTagIndex.isLoaded()) {
+            mTagIndex.load(mDb.tagDao().loadAllTaskTags());
+        }
+        return mTagIndex;
+    }
+
+    // the index as is, maybe not loaded yet : for main thread reads
+    public TagBitmapIndex getTagIndex() {
+        return mTagIndex;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Recurring tasks : set (null to remove) the repeat rule of a task.
+     * Local only, nothing is recorded for the sync
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void setRecurrence(int taskId, RecurrenceRule rule) {
+        if (rule == null) {
+            mDb.recurrenceDao().deleteRule(taskId);
+        } else {
+            rule.setTaskId(taskId);
+            mDb.recurrenceDao().upsertRule(rule);
+        }
+        mOccurrenceWindows.evictAll();
+    }
+
+    @WorkerThread
+    public RecurrenceRule getRecurrence(int taskId) {
+        return mDb.recurrenceDao().getRule(taskId);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Occurrences of the recurring tasks between two times, in time order.
+     * Each OCCURRENCE_WINDOW is expanded once and cached : the rules are never materialised,
+     * only completed/skipped occurrences are read from db. Skipped ones are left out
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public List<Occurrence> loadOccurrences(long from, long to) {
+        List<Occurrence> selected = new ArrayList<>();
+        for (long window = from / OCCURRENCE_WINDOW; window <= to / OCCURRENCE_WINDOW; window++) {
+            List<Occurrence> occurrences = mOccurrenceWindows.get(window);
+            if (occurrences == null) {
+                occurrences = expandWindow(window * OCCURRENCE_WINDOW, (window + 1) * OCCURRENCE_WINDOW - 1);
+                mOccurrenceWindows.put(window, occurrences);
+            }
+            for (Occurrence occurrence : occurrences) {
+                if (occurrence.getOccursAt() >= from && occurrence.getOccursAt() <= to) {
+                    selected.add(occurrence);
+                }
+            }
+        }
+
+        // current task rows : edits don't need a new expansion
+        SparseBooleanArray distinct = new SparseBooleanArray();
+        for (Occurrence occurrence : selected) {
+            distinct.put(occurrence.getTaskId(), true);
+        }
+        int[] ids = new int[distinct.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = distinct.keyAt(i);
+        }
+        SparseArray<TaskEntry> tasks = new SparseArray<>(ids.length);
+        for (int[] chunk : chunks(ids)) {
+            for (TaskEntry task : mDb.taskDao().loadTasksByIds(chunk)) {
+                if (task.getDeletedAt() == null && !task.isCompleted()) {
+                    tasks.put(task.getId(), task);
+                }
+            }
+        }
+
+        List<Occurrence> result = new ArrayList<>(selected.size());
+        for (Occurrence occurrence : selected) {
+            TaskEntry task = tasks.get(occurrence.getTaskId());
+            if (task != null) {
+                result.add(occurrence.withTask(task));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Complete/skip an occurrence, or back to pending with state 0 : a single row written
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void setOccurrenceState(int taskId, long occursAt, int state) {
+        if (state == 0) {
+            mDb.recurrenceDao().deleteState(taskId, occursAt);
+        } else {
+            mDb.recurrenceDao().upsertState(new OccurrenceState(taskId, occursAt, state));
+        }
+        mOccurrenceWindows.remove(occursAt / OCCURRENCE_WINDOW);
+    }
+
+    // occurrences of the active rules in a window, with their persisted state
+    private List<Occurrence> expandWindow(long from, long to) {
+        SparseArray<LongSparseArray<Integer>> states = new SparseArray<>();
+        for (OccurrenceState state : mDb.recurrenceDao().loadStates(from, to)) {
+            LongSparseArray<Integer> ofTask = states.get(state.getTaskId());
+            if (ofTask == null) {
+                ofTask = new LongSparseArray<>();
+                states.put(state.getTaskId(), ofTask);
+            }
+            ofTask.put(state.getOccursAt(), state.getState());
+        }
+
+        List<Occurrence> occurrences = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        for (RecurrenceRule rule : mDb.recurrenceDao().loadActiveRules(from, to)) {
+            times.clear();
+            RecurrenceExpander.expand(rule, from, to, times);
+            LongSparseArray<Integer> ofTask = states.get(rule.getTaskId());
+            for (Long time : times) {
+                Integer state = ofTask == null ? null : ofTask.get(time);
+                if (state == null) {
+                    occurrences.add(new Occurrence(rule.getTaskId(), time, 0, null));
+                } else if (state != OccurrenceState.STATE_SKIPPED) {
+                    occurrences.add(new Occurrence(rule.getTaskId(), time, state, null));
+                }
+            }
+        }
+        Collections.sort(occurrences, new Comparator<Occurrence>() {
+            @Override
+            public int compare(Occurrence o1, Occurrence o2) {
+                return o1.getOccursAt() < o2.getOccursAt() ? -1 : (o1.getOccursAt() == o2.getOccursAt() ? 0 : 1);
+            }
+        });
+        return occurrences;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Physically delete the tombstones older than a time, in small transactions
+     * so other db work is not blocked for long
+     * @return number of purged tasks
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public int purgeTombstones(long deletedBefore) {
+        int total = 0;
+        final int[] purged = new int[1];
+        do {
+            final int[] ids = toArray(mDb.taskDao().loadExpiredTombstoneIds(deletedBefore, PURGE_BATCH_SIZE));
+            mDb.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    removeTaskRows(ids);
+                    mDb.bodyDao().deleteBodiesOfTasks(ids);
+                    purged[0] = ids.length;
+                }
+            });
+            onTaskRowsRemoved(ids);
+            total += purged[0];
+        } while (purged[0] == PURGE_BATCH_SIZE);
+        Log.d(LOG_TAG, "Purged " + total + " tombstones");
+        return total;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Move the root tasks completed before a time, with their subtasks, to the archive table,
+     * a batch per transaction. Local storage only : nothing is recorded for the sync
+     * @return number of archived tasks
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public int archiveCompleted(final long completedBefore) {
+        int total = 0;
+        final int[] moved = new int[1];
+        final int[][] movedIds = new int[1][];
+        do {
+            mDb.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    List<ArchivedTaskEntry> batch =
+                            mDb.archiveDao().loadArchiveCandidates(completedBefore, ARCHIVE_BATCH_SIZE);
+                    int[] ids = new int[batch.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = batch.get(i).getId();
+                    }
+                    mDb.archiveDao().insertArchivedTasks(batch);
+                    for (int[] chunk : chunks(ids)) {
+                        removeTaskRows(chunk);
+                    }
+                    moved[0] = ids.length;
+                    movedIds[0] = ids;
+                }
+            });
+            onTaskRowsRemoved(movedIds[0]);
+            total += moved[0];
+        } while (moved[0] >= ARCHIVE_BATCH_SIZE);
+        Log.d(LOG_TAG, "Archived " + total + " completed tasks");
+        return total;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Check the task_counter rows kept by the triggers against a count of task, and rewrite
+     * them on a difference (a time zone change moves the day counters, for instance).
+     * Then drop the day counters before today, and the counters down to 0.
+     * Scans the whole table : idle maintenance only
+     * @return true when the counters were right
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public boolean reconcileCounters() {
+        final String today = TaskCounter.dayCounter(System.currentTimeMillis());
+        final boolean[] matched = new boolean[1];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                List<TaskCounter> real = new ArrayList<>();
+                for (TaskCounter counter : mDb.counterDao().countFromTasks()) {
+                    if (isKeptCounter(counter, today)) {
+                        real.add(counter);
+                    }
+                }
+                Map<String, Integer> kept = new HashMap<>();
+                for (TaskCounter counter : mDb.counterDao().getAllCounters()) {
+                    if (isKeptCounter(counter, today)) {
+                        kept.put(counter.getName(), counter.getValue());
+                    }
+                }
+                matched[0] = kept.size() == real.size();
+                for (TaskCounter counter : real) {
+                    Integer value = kept.get(counter.getName());
+                    if (value == null || value != counter.getValue()) {
+                        Log.w(LOG_TAG, "Counter " + counter.getName() + " is " + value
+                                + ", counted " + counter.getValue());
+                        matched[0] = false;
+                    }
+                }
+                if (!matched[0]) {
+                    mDb.counterDao().deleteAllCounters();
+                    mDb.counterDao().insertCounters(real);
+                } else {
+                    mDb.counterDao().deleteStaleCounters(today);
+                }
+            }
+        });
+        return matched[0];
+    }
+
+    // not 0, and not a day before today
+    private static boolean isKeptCounter(TaskCounter counter, String today) {
+        String name = counter.getName();
+        return counter.getValue() != 0
+                && !(name.startsWith(TaskCounter.COUNTER_DAY) && name.compareTo(today) < 0);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Bulk actions on a selection : each one is a single transaction, so a single commit
+     * and a single list refresh whatever the number of tasks.
+     * Delete and complete apply to the subtasks too
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void deleteTasks(final int[] ids) {
+        final Date now = new Date();
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                int[] subtree = subtreeIds(ids);
+                for (int[] chunk : chunks(ids)) {
+                    mDb.taskDao().softDeleteTasks(chunk, now);
+                }
+                recordOps(subtree, OutboxEntry.OP_DELETE);
+            }
+        });
+    }
+
+    @WorkerThread
+    public void setPriority(final int[] ids, final int priority) {
+        final Date now = new Date();
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                // the moved tasks keep their list order, RANK_GAP apart below the last task of the priority
+                List<TaskEntry> moved = new ArrayList<>(ids.length);
+                for (int[] chunk : chunks(ids)) {
+                    moved.addAll(mDb.taskDao().loadTasksByIds(chunk));
+                }
+                Collections.sort(moved, new Comparator<TaskEntry>() {
+                    @Override
+                    public int compare(TaskEntry t1, TaskEntry t2) {
+                        if (t1.getPriority() != t2.getPriority()) {
+                            return t1.getPriority() < t2.getPriority() ? -1 : 1;
+                        }
+                        int byRank = Double.compare(t1.getRank(), t2.getRank());
+                        return byRank != 0 ? byRank : t1.getId() - t2.getId();
+                    }
+                });
+                double rank = nextRank(priority);
+                for (TaskEntry task : moved) {
+                    mDb.taskDao().updatePriority(task.getId(), priority, rank, now);
+                    rank += RANK_GAP;
+                }
+                recordOps(ids, OutboxEntry.OP_UPDATE);
+            }
+        });
+    }
+
+    @WorkerThread
+    public void completeTasks(final int[] ids) {
+        final Date now = new Date();
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (int[] chunk : chunks(ids)) {
+                    mDb.taskDao().completeTasks(chunk, now);
+                }
+                recordOps(subtreeIds(ids), OutboxEntry.OP_UPDATE);
+            }
+        });
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Apply a batch of changes pulled from the sync server, in one transaction.
+     * Conflicts are resolved last-writer-wins on the change time (updated/deleted at).
+     * A remote delete covers the subtasks, as a local one does
+     * @return number of changes applied
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public int applyRemoteChanges(final List<TaskEntry> changes) {
+        final int[] applied = new int[1];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                TaskDao dao = mDb.taskDao();
+                for (TaskEntry remote : changes) {
+                    TaskEntry local = dao.getTaskByUid(remote.getUid());
+                    if (local == null) {
+                        // archived : back to the hot table only if the remote copy is newer
+                        ArchivedTaskEntry archived = mDb.archiveDao().getArchivedTaskByUid(remote.getUid());
+                        if (archived != null) {
+                            if (!remoteWins(remote, archived)) {
+                                continue;
+                            }
+                            mDb.archiveDao().deleteArchivedTask(archived.getId());
+                            mDb.bodyDao().deleteBody(archived.getId());
+                        }
+                        // deleted before we ever saw it
+                        if (remote.getDeletedAt() != null) {
+                            continue;
+                        }
+                        String description = remote.getDescription();
+                        remote.setId(0);
+                        remote.setDescription(TaskBodyCodec.previewOf(description));
+                        int id = (int) dao.insertTask(remote);
+                        writeBody(id, description);
+                        linkInTree(id, null);
+                    } else if (remoteWins(remote, local)) {
+                        // the tree is local only : keep the task where it is
+                        String description = remote.getDescription();
+                        remote.setId(local.getId());
+                        remote.setParentId(local.getParentId());
+                        remote.setDescription(TaskBodyCodec.previewOf(description));
+                        dao.updateTask(remote);
+                        writeBody(local.getId(), description);
+                        if (remote.getDeletedAt() != null && local.getDeletedAt() == null) {
+                            dao.softDeleteTask(local.getId(), remote.getDeletedAt());
+                        }
+                    } else {
+                        continue;
+                    }
+                    applied[0]++;
+                }
+            }
+        });
+        return applied[0];
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Outbox drain, used by the sync : a page of pending operations in recording order
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public List<OutboxEntry> loadOutboxBatch(long afterSeq, int limit) {
+        return mDb.outboxDao().loadBatch(afterSeq, limit);
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Current state of the tasks of an outbox page, as sent to the server.
+     * A deleted task whose row is already purged is sent as a bare tombstone
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public List<TaskEntry> loadOutboxPayload(List<OutboxEntry> entries) {
+        int[] ids = new int[entries.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = entries.get(i).getTaskId();
+        }
+        SparseArray<TaskEntry> tasks = new SparseArray<>(ids.length);
+        for (int[] chunk : chunks(ids)) {
+            for (TaskEntry task : mDb.taskDao().loadTasksByIds(chunk)) {
+                tasks.put(task.getId(), task);
+            }
+            // the server gets the full text, not the preview
+            for (TaskBody body : mDb.bodyDao().loadBodies(chunk)) {
+                TaskEntry task = tasks.get(body.getTaskId());
+                if (task != null) {
+                    task.setDescription(TaskBodyCodec.decode(body));
+                }
+            }
+        }
+
+        List<TaskEntry> payload = new ArrayList<>(entries.size());
+        for (OutboxEntry entry : entries) {
+            TaskEntry task = tasks.get(entry.getTaskId());
+            if (task == null) {
+                if (entry.getOp() != OutboxEntry.OP_DELETE || entry.getUid() == null) {
+                    continue;
+                }
+                // only uid and deletion time matter to the server
+                Date deletedAt = new Date(entry.getQueuedAt());
+                task = new TaskEntry(entry.getTaskId(), "", 0, deletedAt,
+                        null, 0, null, deletedAt, entry.getUid(), null);
+            }
+            payload.add(task);
+        }
+        return payload;
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * The page has been accepted by the server : drop its entries, in one transaction.
+     * Entries re-recorded meanwhile have a new seq and stay queued.
+     * A crash before this point only means the page is pushed again (idempotent with LWW)
+     * ---------------------------------------------------------------------------------------------
+     */
+    @WorkerThread
+    public void acknowledgeOutbox(final List<OutboxEntry> entries) {
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (OutboxEntry entry : entries) {
+                    mDb.outboxDao().deleteIfUnchanged(entry.getTaskId(), entry.getSeq());
+                }
+            }
+        });
+    }
+
+    /**
+     * ---------------------------------------------------------------------------------------------
+     * Record a mutation in the outbox, coalesced with the one already pending for the task :
+     * insert + update stays an insert, insert + delete cancels out, others keep the last op.
+     * Must run inside the transaction of the mutation
+     * @param uid task uid, looked up when null
+     * ---------------------------------------------------------------------------------------------
+     */
+    private void recordOp(int taskId, String uid, int op) {
+        recordOp(taskId, uid, op, nextSeq());
+    }
+
+    // a run of mutations in one transaction : MAX(seq) is read once, then counted up in memory
+    private void recordOps(int[] ids, int op) {
+        long seq = nextSeq();
+        for (int id : ids) {
+            recordOp(id, null, op, seq++);
+        }
+    }
+
+    // @param seq a free seq, above the pending ones
+    private void recordOp(int taskId, String uid, int op, long seq) {
+        OutboxDao outbox = mDb.outboxDao();
+        OutboxEntry pending = outbox.getEntry(taskId);
+
+        if (pending != null && pending.getOp() == OutboxEntry.OP_INSERT) {
+            if (op == OutboxEntry.OP_DELETE) {
+                // never pushed : nothing to tell the server
+                outbox.deleteEntry(taskId);
+                return;
+            }
+            op = OutboxEntry.OP_INSERT;
+        }
+        if (uid == null) {
+            uid = pending != null && pending.getUid() != null
+                    ? pending.getUid()
+                    : mDb.taskDao().getTaskUid(taskId);
+        }
+
+        outbox.upsertEntry(new OutboxEntry(taskId, uid, op, seq, System.currentTimeMillis()));
+    }
+
+    private long nextSeq() {
+        Long maxSeq = mDb.outboxDao().getMaxSeq();
+        return maxSeq == null ? 1 : maxSeq + 1;
+    }
+
+    // closure rows of a new task : itself, then one per ancestor of its parent one level deeper
+    private void linkInTree(int id, Integer parentId) {
+        List<TaskClosure> rows = new ArrayList<>();
+        rows.add(new TaskClosure(id, id, 0));
+        if (parentId != null) {
+            for (TaskClosure ancestor : mDb.closureDao().loadAncestorRows(parentId)) {
+                rows.add(new TaskClosure(ancestor.getAncestorId(), id, ancestor.getDepth() + 1));
+            }
+        }
+        mDb.closureDao().insertRows(rows);
+    }
+
+    // long text to task_body, a short one drops the body left by a previous long text.
+    // Must run inside the transaction of the row write
+    private void writeBody(int taskId, String description) {
+        if (TaskBodyCodec.needsBody(description)) {
+            mDb.bodyDao().upsertBody(TaskBodyCodec.encode(taskId, description));
+        } else {
+            mDb.bodyDao().deleteBody(taskId);
+        }
+    }
+
+    // physical removal from task, with the rows linked to the tasks in the other tables.
+    // The caches are updated by onTaskRowsRemoved() once the transaction is committed
+    private void removeTaskRows(int[] ids) {
+        mDb.taskDao().removeTasks(ids);
+        mDb.closureDao().deleteRowsOfDescendants(ids);
+        mDb.closureDao().deleteRowsOfAncestors(ids);
+        mDb.tagDao().deleteTagsOfTasks(ids);
+        mDb.recurrenceDao().deleteRulesOfTasks(ids);
+        mDb.recurrenceDao().deleteStatesOfTasks(ids);
+        mDb.draftDao().deleteDraftsOfTasks(ids);
+    }
+
+    // after the commit of removeTaskRows() : a rollback leaves the caches matching the db
+    private void onTaskRowsRemoved(int[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+        mTagIndex.onTasksRemoved(ids);
+        mOccurrenceWindows.evictAll();
+    }
+
+    // ids with all their descendants
+    private int[] subtreeIds(int[] ids) {
+        List<Integer> subtree = new ArrayList<>(ids.length);
+        for (int[] chunk : chunks(ids)) {
+            subtree.addAll(mDb.closureDao().loadSubtreeIds(chunk));
+        }
+        return toArray(subtree);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    // same priority under the same parent
+    private static boolean isSibling(TaskEntry task, TaskEntry other, int priority) {
+        if (other == null || other.getPriority() != priority) {
+            return false;
+        }
+        Integer parentId = task.getParentId();
+        return parentId == null ? other.getParentId() == null : parentId.equals(other.getParentId());
+    }
+
+    // last-writer-wins : the remote copy replaces the local one if changed later, a tie keeps the local one
+    public static boolean remoteWins(TaskEntry remote, TaskEntry local) {
+        return changeTime(remote) > changeTime(local);
+    }
+
+    // last time a task has been modified : edit or deletion
+    public static long changeTime(TaskEntry task) {
+        long time = task.getUpdatedAt() == null ? 0 : task.getUpdatedAt().getTime();
+        if (task.getDeletedAt() != null) {
+            time = Math.max(time, task.getDeletedAt().getTime());
+        }
+        return time;
+    }
+
+    private static String newUid() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    // split ids in slices of MAX_BATCH_IDS
+    private static List<int[]> chunks(int[] ids) {
+        List<int[]> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.length; from += MAX_BATCH_IDS) {
+            chunks.add(Arrays.copyOfRange(ids, from, Math.min(ids.length, from + MAX_BATCH_IDS)));
+        }
+        return chunks;
+    }
+
+    // rank after the last task of a priority
+    private double nextRank(int priority) {
+        Double max = mDb.taskDao().getMaxRank(priority);
+        return max == null ? RANK_GAP : max + RANK_GAP;
+    }
+
+}
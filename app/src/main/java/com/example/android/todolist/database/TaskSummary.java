@@ -0,0 +1,47 @@
+package com.example.android.todolist.database;
+
+import java.util.List;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Figures of the list header, read from the task_counter rows
+ * -------------------------------------------------------------------------------------------------
+ */
+public class TaskSummary {
+
+    // priorities are 1 to 3
+    private static final int PRIORITY_COUNT = 3;
+
+    private int total;
+    private final int[] byPriority = new int[PRIORITY_COUNT];
+    private int updatedToday;
+
+    public TaskSummary(List<TaskCounter> counters) {
+        for (TaskCounter counter : counters) {
+            String name = counter.getName();
+            if (name.equals(TaskCounter.COUNTER_LIVE)) {
+                total = counter.getValue();
+            } else if (name.startsWith(TaskCounter.COUNTER_PRIORITY)) {
+                int priority = Integer.parseInt(name.substring(TaskCounter.COUNTER_PRIORITY.length()));
+                if (priority >= 1 && priority <= PRIORITY_COUNT) {
+                    byPriority[priority - 1] = counter.getValue();
+                }
+            } else if (name.startsWith(TaskCounter.COUNTER_DAY)) {
+                // only today's is loaded
+                updatedToday = counter.getValue();
+            }
+        }
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getCount(int priority) {
+        return byPriority[priority - 1];
+    }
+
+    public int getUpdatedToday() {
+        return updatedToday;
+    }
+}
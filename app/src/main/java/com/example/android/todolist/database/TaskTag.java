@@ -0,0 +1,33 @@
+package com.example.android.todolist.database;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+
+/**
+ * -------------------------------------------------------------------------------------------------
+ * Task to tag link : the primary key serves the tags of a task, the tag_id index the tasks of a tag
+ * -------------------------------------------------------------------------------------------------
+ */
+@Entity (tableName = "task_tag", primaryKeys = {"task_id", "tag_id"},
+        indices = {@Index(value = {"tag_id"})})
+public class TaskTag {
+
+    @ColumnInfo(name = "task_id")
+    private int taskId;
+    @ColumnInfo(name = "tag_id")
+    private int tagId;
+
+    public TaskTag(int taskId, int tagId) {
+        this.taskId = taskId;
+        this.tagId = tagId;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public int getTagId() {
+        return tagId;
+    }
+}